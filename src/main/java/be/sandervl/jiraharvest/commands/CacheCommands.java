@@ -0,0 +1,44 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.ProjectAssignmentProvider;
+import be.sandervl.jiraharvest.services.ResponseCache;
+import java.util.stream.Collectors;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@ShellComponent
+public class CacheCommands {
+
+  private final ResponseCache responseCache;
+  private final ProjectAssignmentProvider projectAssignmentProvider;
+
+  public CacheCommands(
+      ResponseCache responseCache, ProjectAssignmentProvider projectAssignmentProvider) {
+    this.responseCache = responseCache;
+    this.projectAssignmentProvider = projectAssignmentProvider;
+  }
+
+  @ShellMethod(value = "Show or clear the cached Jira and Harvest responses", key = "cache")
+  public String cache(
+      @ShellOption(defaultValue = "false", help = "Drop all cached responses") boolean clear) {
+    if (clear) {
+      responseCache.clear();
+      projectAssignmentProvider.invalidate();
+      return "Cache cleared";
+    }
+    var stats = responseCache.stats();
+    String entries =
+        stats.entries().stream()
+            .map(
+                entry ->
+                    String.format(
+                        "%s: %s, age %ds, expires in %ds",
+                        entry.key(),
+                        entry.loading() ? "loading" : "cached",
+                        entry.age().toSeconds(),
+                        entry.expiresIn().toSeconds()))
+            .collect(Collectors.joining("\n"));
+    return String.format("Hits: %d, misses: %d%n%s", stats.hits(), stats.misses(), entries);
+  }
+}
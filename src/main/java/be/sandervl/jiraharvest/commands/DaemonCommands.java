@@ -0,0 +1,56 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.SyncDaemon;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@ShellComponent
+public class DaemonCommands {
+
+  private final SyncDaemon daemon;
+  private final ObjectMapper objectMapper;
+
+  public DaemonCommands(SyncDaemon daemon, ObjectMapper objectMapper) {
+    this.daemon = daemon;
+    this.objectMapper = objectMapper;
+  }
+
+  @ShellMethod(
+      value =
+          "Poll Jira in the background and submit every issue that needs no review, run with"
+              + " --foreground to keep a non-interactive launch alive",
+      key = "daemon-start")
+  public String daemonStart(
+      @ShellOption(defaultValue = "false", help = "Block until the daemon is stopped")
+          boolean foreground)
+      throws InterruptedException {
+    if (!daemon.start()) {
+      return "The sync daemon is already running";
+    }
+    if (foreground) {
+      daemon.awaitStop();
+      return "The sync daemon stopped";
+    }
+    var status = daemon.status();
+    return status.statusPort() != null
+        ? "Started the sync daemon, status on http://localhost:" + status.statusPort() + "/status"
+        : "Started the sync daemon";
+  }
+
+  @ShellMethod(value = "Stop the sync daemon", key = "daemon-stop")
+  public String daemonStop() {
+    if (!daemon.isRunning()) {
+      return "The sync daemon is not running";
+    }
+    daemon.stop();
+    return "Stopped the sync daemon";
+  }
+
+  @ShellMethod(value = "Show the state and last poll of the sync daemon", key = "daemon-status")
+  public String daemonStatus() throws JsonProcessingException {
+    return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(daemon.status());
+  }
+}
@@ -0,0 +1,36 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.HttpTransport;
+import java.util.stream.Collectors;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+
+@ShellComponent
+public class HttpCommands {
+
+  private final HttpTransport httpTransport;
+
+  public HttpCommands(HttpTransport httpTransport) {
+    this.httpTransport = httpTransport;
+  }
+
+  @ShellMethod(value = "Show per-host HTTP connection and latency statistics", key = "http-stats")
+  public String httpStats() {
+    return httpTransport.stats().stream()
+        .map(
+            host ->
+                String.format(
+                    "%s: %d requests, %d failed, %d in flight, %d over HTTP/2, %d gzipped,"
+                        + " %d KiB received, avg %dms, max %dms",
+                    host.host(),
+                    host.requests(),
+                    host.failures(),
+                    host.inFlight(),
+                    host.http2Responses(),
+                    host.gzipResponses(),
+                    host.bytesReceived() / 1024,
+                    host.averageLatency().toMillis(),
+                    host.maxLatency().toMillis()))
+        .collect(Collectors.joining("\n"));
+  }
+}
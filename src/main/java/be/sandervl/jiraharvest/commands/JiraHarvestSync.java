@@ -1,25 +1,36 @@
 package be.sandervl.jiraharvest.commands;
 
 import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.HarvestWriteQueue;
+import be.sandervl.jiraharvest.services.IssueResolver;
 import be.sandervl.jiraharvest.services.JiraIssueParser;
 import be.sandervl.jiraharvest.services.JiraService;
+import be.sandervl.jiraharvest.services.ProjectAssignmentCatalog;
+import be.sandervl.jiraharvest.services.ProjectAssignmentProvider;
+import be.sandervl.jiraharvest.services.SyncCheckpointStore;
+import be.sandervl.jiraharvest.services.SyncLock;
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import be.sandervl.jiraharvest.services.TimeEntryLedger;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
-import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import org.jline.terminal.Terminal;
 import org.springframework.shell.component.flow.ComponentFlow;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
 
 @ShellComponent
 public class JiraHarvestSync {
@@ -27,117 +38,291 @@ public class JiraHarvestSync {
   protected final Logger LOG = Logger.getLogger(getClass().getName());
 
   private final JiraService jiraService;
-  private final HarvestService harvestService;
-  private final JiraIssueParser issueParser;
   private final ComponentFlow.Builder componentFlowBuilder;
   private final Terminal terminal;
-  private Set<HarvestService.ProjectAssignment> projectAssignments;
+  private final SyncCheckpointStore checkpointStore;
+  private final HarvestWriteQueue writeQueue;
+  private final IssueResolver issueResolver;
+  private final ProjectAssignmentProvider projectAssignmentProvider;
+  private final TimeEntryLedger timeEntryLedger;
+  private final SyncMetrics metrics;
+  private final ExecutorService resolveExecutor;
+  private final SyncLock syncLock;
 
   public JiraHarvestSync(
       JiraService jiraService,
-      HarvestService harvestService,
-      JiraIssueParser issueParser,
       ComponentFlow.Builder componentFlowBuilder,
-      Terminal terminal) {
+      Terminal terminal,
+      SyncCheckpointStore checkpointStore,
+      HarvestWriteQueue writeQueue,
+      IssueResolver issueResolver,
+      ProjectAssignmentProvider projectAssignmentProvider,
+      TimeEntryLedger timeEntryLedger,
+      SyncMetrics metrics,
+      ExecutorService resolveExecutor,
+      SyncLock syncLock) {
     this.jiraService = jiraService;
-    this.harvestService = harvestService;
-    this.issueParser = issueParser;
     this.componentFlowBuilder = componentFlowBuilder;
     this.terminal = terminal;
-    projectAssignments =
-        StreamSupport.stream(harvestService.getProjectAssignments().spliterator(), false)
-            .collect(Collectors.toSet());
+    this.checkpointStore = checkpointStore;
+    this.writeQueue = writeQueue;
+    this.issueResolver = issueResolver;
+    this.projectAssignmentProvider = projectAssignmentProvider;
+    this.timeEntryLedger = timeEntryLedger;
+    this.metrics = metrics;
+    this.resolveExecutor = resolveExecutor;
+    this.syncLock = syncLock;
   }
 
   @ShellMethod(value = "Start Jira Harvest sync", key = "start")
-  public void start() {
-    var existingTimeEntryNotes =
-        StreamSupport.stream(harvestService.getTimeEntries().spliterator(), false)
-            .map(HarvestService.TimeEntry::notes)
-            .filter(note -> note != null && !note.equals(""))
-            .collect(Collectors.toSet());
-    var jiraIssues = StreamSupport.stream(jiraService.getIssues().spliterator(), false);
+  public void start(
+      @ShellOption(
+              defaultValue = "false",
+              help = "Ignore the checkpoint and sync the full days-to-go-back window")
+          boolean full,
+      @ShellOption(
+              defaultValue = "false",
+              help =
+                  "Resolve all issues in parallel, submit the unambiguous ones and review the rest"
+                      + " at the end")
+          boolean auto,
+      @ShellOption(
+              defaultValue = "false",
+              help = "With --auto, report issues that need a review instead of prompting")
+          boolean unattended) {
+    syncLock.run(() -> sync(full, auto, unattended));
+  }
+
+  private void sync(boolean full, boolean auto, boolean unattended) {
+    var run =
+        checkpointStore.startRun(
+            full ? SyncCheckpointStore.SyncCheckpoint.EMPTY : checkpointStore.load());
+    timeEntryLedger.ensureReconciled();
+    var currentUser = jiraService.getCurrentUser();
+    var jiraIssues =
+        StreamSupport.stream(
+                jiraService
+                    .getIssuesUpdatedSince(currentUser, run, run.pendingReviewKeys())
+                    .spliterator(),
+                false)
+            .filter(
+                issue -> {
+                  if (run.isHandled(issue.key(), JiraIssueParser.getUpdated(issue))) {
+                    metrics.issue("already-synced");
+                    return false;
+                  }
+                  if (timeEntryLedger.contains(issue.key())) {
+                    run.handled(issue.key(), JiraIssueParser.getUpdated(issue));
+                    metrics.issue("already-synced");
+                    return false;
+                  }
+                  metrics.issue("processed");
+                  return true;
+                });
+
+    List<CompletableFuture<Boolean>> pendingIssues = new ArrayList<>();
+    try {
+      if (auto) {
+        autoSync(jiraIssues, currentUser, run, pendingIssues, unattended);
+      } else {
+        jiraIssues.forEach(
+            issue ->
+                pendingIssues.add(
+                    track(
+                        run,
+                        issue,
+                        process(issueResolver.resolve(issue, catalog(), currentUser)))));
+      }
+    } catch (RuntimeException e) {
+      awaitAll(pendingIssues);
+      run.abort();
+      throw e;
+    }
+    awaitAll(pendingIssues);
+    run.commit();
+  }
+
+  private static void awaitAll(List<CompletableFuture<Boolean>> pendingIssues) {
+    CompletableFuture.allOf(pendingIssues.toArray(CompletableFuture[]::new)).join();
+  }
+
+  private void autoSync(
+      Stream<JiraService.BasicIssue> jiraIssues,
+      JiraService.JiraUser currentUser,
+      SyncCheckpointStore.Run run,
+      List<CompletableFuture<Boolean>> pendingIssues,
+      boolean unattended) {
+    List<Tuple2<JiraService.BasicIssue, CompletableFuture<IssueResolver.Resolution>>> resolutions =
+        jiraIssues
+            .map(
+                issue ->
+                    Tuple.of(
+                        issue,
+                        CompletableFuture.supplyAsync(
+                            () -> issueResolver.resolve(issue, catalog(), currentUser),
+                            resolveExecutor)))
+            .toList();
+
+    List<IssueResolver.Resolution> needsReview = new ArrayList<>();
+    int failed = 0;
+    for (var resolution : resolutions) {
+      IssueResolver.Resolution resolved;
+      try {
+        resolved = resolution._2().join();
+      } catch (CompletionException e) {
+        printFailure(resolution._1(), e);
+        pendingIssues.add(track(run, resolution._1(), CompletableFuture.completedFuture(false)));
+        failed++;
+        continue;
+      }
+      if (issueResolver.isUnambiguous(resolved, catalog())) {
+        pendingIssues.add(
+            track(
+                run,
+                resolved.issue(),
+                submit(
+                    resolved.issue(),
+                    resolved.projectAssignment().project().id(),
+                    resolved.taskAssignment().task().id(),
+                    resolved.spentDate(),
+                    resolved.hours(),
+                    resolved.issue().key())));
+      } else {
+        needsReview.add(resolved);
+      }
+    }
 
-    jiraIssues
-        .filter(issue -> !existingTimeEntryNotes.contains(issue.key()))
-        .forEach(this::process);
+    terminal
+        .writer()
+        .print(
+            String.format(
+                "Submitted %d issues automatically, %d need a review, %d failed\n",
+                resolutions.size() - needsReview.size() - failed, needsReview.size(), failed));
+    terminal.writer().flush();
+
+    for (var resolution : needsReview) {
+      if (unattended) {
+        terminal
+            .writer()
+            .print(
+                String.format(
+                    "Skipped Jira issue '%s - %s', it needs a review\n",
+                    resolution.issue().key(), resolution.issue().fields().summary()));
+        metrics.issue("skipped");
+        run.needsReview(resolution.issue().key(), JiraIssueParser.getUpdated(resolution.issue()));
+      } else {
+        pendingIssues.add(track(run, resolution.issue(), process(resolution)));
+      }
+    }
+    terminal.writer().flush();
   }
 
-  private void process(JiraService.BasicIssue issue) {
+  private CompletableFuture<Boolean> track(
+      SyncCheckpointStore.Run run,
+      JiraService.BasicIssue issue,
+      CompletableFuture<Boolean> processed) {
+    var updated = JiraIssueParser.getUpdated(issue);
+    return processed.thenApply(
+        handled -> {
+          if (handled) {
+            run.handled(issue.key(), updated);
+          } else {
+            run.failed(updated);
+          }
+          return handled;
+        });
+  }
+
+  private CompletableFuture<Boolean> process(IssueResolver.Resolution resolution) {
+    var issue = resolution.issue();
     try {
       String statement =
           String.format("Processing Jira issue '%s - %s'\n", issue.key(), issue.fields().summary());
       terminal.writer().print(statement);
 
       var taskAndProjectEntry =
-          getTaskAndProjectFromIssue(issue).orElseGet(this::projectAndTaskCorrectionFlow);
+          resolution.projectAssignment() != null
+              ? Tuple.of(resolution.projectAssignment(), resolution.taskAssignment())
+              : projectAndTaskCorrectionFlow();
 
       var projectAssignment = taskAndProjectEntry._1();
       var taskAssignment = taskAndProjectEntry._2();
       var spentDate =
-          issueParser.getWorkedOnTimeForIssue(issue).orElseGet(this::spentDateCorrectionFlow);
+          Optional.ofNullable(resolution.spentDate()).orElseGet(this::spentDateCorrectionFlow);
       Double hours =
           Math.max(
-              1,
-              issueParser
-                  .getWorkedTimeForIssue(issue)
-                  .map(Duration::toHours)
-                  .map(Double::valueOf)
-                  .orElseGet(this::spentHoursCorrectionFlow));
+              1, Optional.ofNullable(resolution.hours()).orElseGet(this::spentHoursCorrectionFlow));
       String notes = issue.key();
 
-      confirmationFlow(
+      return confirmationFlow(
           issue,
           projectAssignment.project().id(),
           taskAssignment.task().id(),
           spentDate,
           hours,
-          notes);
-
+          notes,
+          resolution.projectAssignment() == null);
     } catch (RuntimeException e) {
-      terminal
-          .writer()
-          .print(
-              String.format(
-                  """
-                    Could not auto create entry for issue %s - %s
-                    Failure reason: %s
-                                        """,
-                  issue.key(), issue.fields().summary(), e.getMessage()));
+      printFailure(issue, e);
+      return CompletableFuture.completedFuture(false);
     }
   }
 
-  private Optional<Tuple2<HarvestService.ProjectAssignment, HarvestService.TaskAssignment>>
-      getTaskAndProjectFromIssue(JiraService.BasicIssue issue) {
-    var projectAssignmentsForClient =
-        projectAssignments.stream()
-            .filter(assignment -> issue.fields().summary().contains(assignment.client().name()))
-            .collect(Collectors.toSet());
-    if (projectAssignmentsForClient.size() < 1) {
-      return Optional.empty();
-    }
-    var issueIsBillable = issue.fields().labels().contains("HARVEST-Billable");
+  private CompletableFuture<Boolean> submit(
+      JiraService.BasicIssue issue,
+      Long projectId,
+      Long taskId,
+      LocalDate spentDate,
+      Double hours,
+      String notes) {
+    return writeQueue
+        .submit(
+            projectId, taskId, spentDate, hours, notes, jiraService.externalReference(issue.key()))
+        .handle(
+            (created, e) -> {
+              if (e != null) {
+                printFailure(issue, e);
+                return false;
+              }
+              timeEntryLedger.record(issue.key(), created);
+              metrics.issue("created");
+              terminal
+                  .writer()
+                  .print(
+                      String.format(
+                          """
+                    Created entry in Harvest
+                    %s
+                    """,
+                          ListHarvestProjects.formatTimeEntry(created)));
+              terminal.writer().flush();
+              return true;
+            });
+  }
 
-    return projectAssignmentsForClient.stream()
-        .filter(
-            assignment ->
-                assignment.taskAssignments().stream()
-                    .anyMatch(taskAssignment -> taskAssignment.billable() == issueIsBillable))
-        .flatMap(
-            ass ->
-                ass.taskAssignments().stream()
-                    .sorted(matchingTaskComparator())
-                    .map(e -> Tuple.of(ass, e)))
-        .findFirst();
+  private void printFailure(JiraService.BasicIssue issue, Throwable e) {
+    metrics.issue("failed");
+    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    terminal
+        .writer()
+        .print(
+            String.format(
+                """
+                    Could not auto create entry for issue %s - %s
+                    Failure reason: %s
+                                        """,
+                issue.key(), issue.fields().summary(), cause.getMessage()));
+    terminal.writer().flush();
   }
 
-  private void confirmationFlow(
+  private CompletableFuture<Boolean> confirmationFlow(
       JiraService.BasicIssue issue,
       Long projectId,
       Long taskId,
       LocalDate spentDate,
       Double hours,
-      String notes) {
+      String notes,
+      boolean corrected) {
     String statement =
         String.format(
             """
@@ -151,23 +336,9 @@ public class JiraHarvestSync {
                             """,
             issue.key(),
             issue.fields().summary(),
-            this.projectAssignments.stream()
-                .filter(pa -> pa.project().id().equals(projectId))
-                .findFirst()
-                .map(pa -> pa.client().name())
-                .orElseThrow(),
-            this.projectAssignments.stream()
-                .filter(pa -> pa.project().id().equals(projectId))
-                .findFirst()
-                .map(pa -> pa.project().name())
-                .orElseThrow(),
-            this.projectAssignments.stream()
-                .filter(e -> e.project().id().equals(projectId))
-                .flatMap(e -> e.taskAssignments().stream())
-                .filter(e -> e.task().id().equals(taskId))
-                .findFirst()
-                .map(ta -> ta.task().name())
-                .orElseThrow(),
+            catalog().project(projectId).map(pa -> pa.client().name()).orElseThrow(),
+            catalog().project(projectId).map(pa -> pa.project().name()).orElseThrow(),
+            catalog().taskAssignment(projectId, taskId).map(ta -> ta.task().name()).orElseThrow(),
             spentDate,
             hours,
             notes);
@@ -194,29 +365,33 @@ public class JiraHarvestSync {
     String isCorrect = results.getContext().get("isCorrect");
 
     if (isCorrect != null && isCorrect.equals("true")) {
-      var created = harvestService.create(projectId, taskId, spentDate, hours, notes);
-      terminal
-          .writer()
-          .print(
-              String.format(
-                  """
-                    Created entry in Harvest
-                    %s
-                    """,
-                  ListHarvestProjects.formatTimeEntry(created)));
+      return submit(issue, projectId, taskId, spentDate, hours, notes)
+          .thenApply(
+              created -> {
+                if (created && corrected) {
+                  issueResolver.recordCorrection(
+                      issue,
+                      catalog().project(projectId).orElseThrow(),
+                      catalog().taskAssignment(projectId, taskId).orElseThrow());
+                }
+                return created;
+              });
     }
     if (isCorrect != null && isCorrect.equals("false")) {
       var projectAndTask = projectAndTaskCorrectionFlow();
       spentDate = spentDateCorrectionFlow();
       hours = spentHoursCorrectionFlow();
-      confirmationFlow(
+      return confirmationFlow(
           issue,
           projectAndTask._1().project().id(),
           projectAndTask._2().task().id(),
           spentDate,
           hours,
-          notes);
+          notes,
+          true);
     }
+    metrics.issue("skipped");
+    return CompletableFuture.completedFuture(true);
   }
 
   private Tuple2<HarvestService.ProjectAssignment, HarvestService.TaskAssignment>
@@ -226,11 +401,7 @@ public class JiraHarvestSync {
             .clone()
             .reset()
             .withSingleItemSelector("clientId")
-            .selectItems(
-                this.projectAssignments.stream()
-                    .collect(
-                        Collectors.toMap(
-                            e -> e.client().name(), e -> e.client().id() + "", (a, b) -> a)))
+            .selectItems(catalog().clientItems())
             .name("What Client is it?\n")
             .and()
             .build();
@@ -242,10 +413,7 @@ public class JiraHarvestSync {
             .clone()
             .reset()
             .withSingleItemSelector("projectId")
-            .selectItems(
-                this.projectAssignments.stream()
-                    .filter(e -> e.client().id().equals(clientId))
-                    .collect(Collectors.toMap(e -> e.project().name(), e -> e.project().id() + "")))
+            .selectItems(catalog().projectItems(clientId))
             .name("What Project is it?\n")
             .and()
             .build();
@@ -257,11 +425,7 @@ public class JiraHarvestSync {
             .clone()
             .reset()
             .withSingleItemSelector("taskId")
-            .selectItems(
-                this.projectAssignments.stream()
-                    .filter(e -> e.project().id().equals(projectId))
-                    .flatMap(e -> e.taskAssignments().stream())
-                    .collect(Collectors.toMap(e -> e.task().name(), e -> e.task().id() + "")))
+            .selectItems(catalog().taskItems(projectId))
             .name("What Task is it?\n")
             .and()
             .build();
@@ -269,16 +433,8 @@ public class JiraHarvestSync {
     Long taskId = Long.valueOf(correctionResults.getContext().get("taskId").toString());
 
     return Tuple.of(
-        this.projectAssignments.stream()
-            .filter(e -> e.project().id().equals(projectId))
-            .findFirst()
-            .orElseThrow(),
-        this.projectAssignments.stream()
-            .filter(e -> e.project().id().equals(projectId))
-            .flatMap(e -> e.taskAssignments().stream())
-            .filter(e -> e.task().id().equals(taskId))
-            .findFirst()
-            .orElseThrow());
+        catalog().project(projectId).orElseThrow(),
+        catalog().taskAssignment(projectId, taskId).orElseThrow());
   }
 
   private LocalDate spentDateCorrectionFlow() {
@@ -313,22 +469,7 @@ public class JiraHarvestSync {
     return Double.valueOf(correctionResults.getContext().get("spentHours").toString());
   }
 
-  private static Comparator<HarvestService.TaskAssignment> matchingTaskComparator() {
-    return (a, b) -> {
-      if (isRelevantForDevs(a) && isRelevantForDevs(b)) {
-        return a.task().name().compareTo(b.task().name());
-      }
-      if (isRelevantForDevs(a)) {
-        return -1;
-      }
-      if (isRelevantForDevs(b)) {
-        return 1;
-      }
-      return a.task().name().compareTo(b.task().name());
-    };
-  }
-
-  private static boolean isRelevantForDevs(HarvestService.TaskAssignment taskAssignment) {
-    return taskAssignment.task().name().toLowerCase().contains("billable");
+  private ProjectAssignmentCatalog catalog() {
+    return projectAssignmentProvider.get();
   }
 }
@@ -1,15 +1,16 @@
 package be.sandervl.jiraharvest.commands;
 
 import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.ProjectAssignmentProvider;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
 
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @ShellComponent
 public class ListHarvestProjects {
@@ -17,23 +18,30 @@ public class ListHarvestProjects {
     protected final Logger LOG = Logger.getLogger(getClass().getName());
 
     private final HarvestService harvestService;
+    private final ProjectAssignmentProvider projectAssignmentProvider;
 
-    public ListHarvestProjects(HarvestService harvestService) {
+    public ListHarvestProjects(HarvestService harvestService, ProjectAssignmentProvider projectAssignmentProvider) {
         this.harvestService = harvestService;
+        this.projectAssignmentProvider = projectAssignmentProvider;
     }
 
     @ShellMethod(value = "List Harvest projects", key = "lshp")
-    public String listHarvestProjects() {
-        return StreamSupport.stream(harvestService.getProjectAssignments().spliterator(), false)
+    public String listHarvestProjects(@ShellOption(defaultValue = "false", help = "Reload the project assignments from Harvest") boolean refresh) {
+        if (refresh) {
+            projectAssignmentProvider.invalidate();
+        }
+        return projectAssignmentProvider.get().assignments().stream()
                 .flatMap(projectAssignment -> projectAssignment.taskAssignments().stream()
                         .map(taskAssignment -> formatHarvestClient(projectAssignment, taskAssignment))).collect(Collectors.joining("\n"));
     }
 
     @ShellMethod(value = "List Harvest time entries", key = "lsht")
     public String listHarvestTimeEntries() {
-        return StreamSupport.stream(harvestService.getTimeEntries().spliterator(), false)
-                .map(ListHarvestProjects::formatTimeEntry)
-                .collect(Collectors.joining("\n"));
+        try (var timeEntries = harvestService.streamTimeEntries()) {
+            return timeEntries
+                    .map(ListHarvestProjects::formatTimeEntry)
+                    .collect(Collectors.joining("\n"));
+        }
     }
 
     private static String formatHarvestClient(HarvestService.ProjectAssignment projectAssignment, HarvestService.TaskAssignment taskAssignment) {
@@ -23,17 +23,18 @@ public class ListJiraIssues {
 
     @ShellMethod(value = "List Jira issues", key = "lsj")
     public String listJiraIssues() {
+    var currentUser = jiraService.getCurrentUser();
     return StreamSupport.stream(jiraService.getIssues().spliterator(), false)
-        .map(this::formatIssue)
+        .map(issue -> formatIssue(issue, currentUser))
         .collect(Collectors.joining("\n"));
     }
 
-    private String formatIssue(JiraService.BasicIssue issue) {
+    private String formatIssue(JiraService.BasicIssue issue, JiraService.JiraUser currentUser) {
         return
                 String.format("""
                         %s: %s
                         %s
                         Estimated time: %s
-                        """, issue.key(), issue.fields().summary(), String.join(",", issue.fields().labels()), issueParser.getWorkedTimeForIssue(issue).map(d -> d.toHours() + "h").orElse("N/A"));
+                        """, issue.key(), issue.fields().summary(), String.join(",", issue.fields().labels()), issueParser.getWorkedTimeForIssue(issue, currentUser).map(d -> d.toHours() + "h").orElse("N/A"));
     }
 }
@@ -0,0 +1,47 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.MappingRuleStore;
+import be.sandervl.jiraharvest.services.ProjectAssignmentProvider;
+import java.util.stream.Collectors;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+
+@ShellComponent
+public class MappingRuleCommands {
+
+  private final MappingRuleStore mappingRules;
+  private final ProjectAssignmentProvider projectAssignmentProvider;
+
+  public MappingRuleCommands(
+      MappingRuleStore mappingRules, ProjectAssignmentProvider projectAssignmentProvider) {
+    this.mappingRules = mappingRules;
+    this.projectAssignmentProvider = projectAssignmentProvider;
+  }
+
+  @ShellMethod(
+      value = "Show the project and task mappings learned from corrections",
+      key = "mapping-rules")
+  public String mappingRules() {
+    var rules = mappingRules.rules();
+    if (rules.isEmpty()) {
+      return "No mapping rules learned yet";
+    }
+    var catalog = projectAssignmentProvider.get();
+    return rules.stream()
+        .map(
+            rule ->
+                String.format(
+                    "%s -> %s / %s (%d corrections)",
+                    rule.key(),
+                    catalog
+                        .project(rule.projectId())
+                        .map(assignment -> assignment.project().name())
+                        .orElse("project " + rule.projectId()),
+                    catalog
+                        .task(rule.taskId())
+                        .map(task -> task.name())
+                        .orElse("task " + rule.taskId()),
+                    rule.support()))
+        .collect(Collectors.joining("\n"));
+  }
+}
@@ -0,0 +1,73 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@ShellComponent
+public class MetricsCommands {
+
+  private final SyncMetrics metrics;
+  private final ObjectMapper objectMapper;
+
+  public MetricsCommands(SyncMetrics metrics, ObjectMapper objectMapper) {
+    this.metrics = metrics;
+    this.objectMapper = objectMapper;
+  }
+
+  @ShellMethod(value = "Show metrics of the remote calls and sync stages so far", key = "metrics")
+  public String metrics(
+      @ShellOption(defaultValue = "false", help = "Print the metrics as JSON") boolean json,
+      @ShellOption(defaultValue = ShellOption.NULL, help = "Write the metrics as JSON to a file")
+          String file) {
+    var snapshot = metrics.snapshot();
+    try {
+      if (file != null) {
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(Path.of(file).toFile(), snapshot);
+        return "Wrote " + snapshot.size() + " metrics to " + file;
+      }
+      if (json) {
+        return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(snapshot);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write the metrics", e);
+    }
+    return snapshot.stream().map(MetricsCommands::format).collect(Collectors.joining("\n"));
+  }
+
+  private static String format(SyncMetrics.MeterSnapshot meter) {
+    String name = meter.name() + tags(meter.tags());
+    return switch (meter.type()) {
+      case "timer" -> String.format(
+          "%s: %d calls, total %.0fms, mean %.1fms, max %.1fms%s",
+          name,
+          meter.count(),
+          meter.total(),
+          meter.count() == 0 ? 0 : meter.total() / meter.count(),
+          meter.max(),
+          meter.percentiles().entrySet().stream()
+              .map(
+                  percentile ->
+                      String.format(", %s %.1fms", percentile.getKey(), percentile.getValue()))
+              .collect(Collectors.joining()));
+      case "summary" -> String.format(
+          "%s: %d recorded, total %.0f, max %.0f", name, meter.count(), meter.total(), meter.max());
+      default -> String.format("%s: %d", name, meter.count());
+    };
+  }
+
+  private static String tags(Map<String, String> tags) {
+    return tags.isEmpty()
+        ? ""
+        : tags.entrySet().stream()
+            .map(tag -> tag.getKey() + "=" + tag.getValue())
+            .collect(Collectors.joining(",", "{", "}"));
+  }
+}
@@ -0,0 +1,52 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.SyncPlanner;
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@ShellComponent
+public class PlanCommands {
+
+  private final SyncPlanner planner;
+  private final String defaultPlanFile;
+
+  public PlanCommands(SyncPlanner planner, @Value("${sync.planFile}") String defaultPlanFile) {
+    this.planner = planner;
+    this.defaultPlanFile = defaultPlanFile;
+  }
+
+  @ShellMethod(
+      value = "Resolve every candidate issue into a JSON Lines plan without writing to Harvest",
+      key = "plan")
+  public String plan(
+      @ShellOption(defaultValue = ShellOption.NULL, help = "Where to write the plan") String file,
+      @ShellOption(
+              defaultValue = "false",
+              help = "Ignore the checkpoint and plan the full days-to-go-back window")
+          boolean full) {
+    var summary = planner.plan(Path.of(file != null ? file : defaultPlanFile), full);
+    return String.format(
+        "Planned %d ready, %d ambiguous and %d incomplete entries in %s",
+        summary.ready(), summary.ambiguous(), summary.incomplete(), summary.planFile());
+  }
+
+  @ShellMethod(value = "Submit the ready entries of a plan to Harvest", key = "apply")
+  public String apply(
+      @ShellOption(defaultValue = ShellOption.NULL, help = "The plan to apply") String file,
+      @ShellOption(
+              defaultValue = "false",
+              help = "Also submit entries where several projects matched")
+          boolean includeAmbiguous) {
+    var summary = planner.apply(Path.of(file != null ? file : defaultPlanFile), includeAmbiguous);
+    StringBuilder result =
+        new StringBuilder(
+            String.format(
+                "Created %d entries, skipped %d, %d failed",
+                summary.created(), summary.skipped(), summary.failures().size()));
+    summary.failures().forEach(failure -> result.append("\n  ").append(failure));
+    return result.toString();
+  }
+}
@@ -0,0 +1,49 @@
+package be.sandervl.jiraharvest.commands;
+
+import be.sandervl.jiraharvest.services.TeamSyncService;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@ShellComponent
+public class TeamSync {
+
+  private final TeamSyncService teamSyncService;
+  private final String defaultRoster;
+
+  public TeamSync(
+      TeamSyncService teamSyncService, @Value("${sync.teamRosterFile}") String defaultRoster) {
+    this.teamSyncService = teamSyncService;
+    this.defaultRoster = defaultRoster;
+  }
+
+  @ShellMethod(
+      value = "Sync every member of the team roster, submitting only unambiguous issues",
+      key = "team-sync")
+  public String teamSync(
+      @ShellOption(
+              defaultValue = ShellOption.NULL,
+              help = "JSON roster with the Jira and Harvest credentials of every member")
+          String roster) {
+    var members = teamSyncService.loadRoster(Path.of(roster != null ? roster : defaultRoster));
+    return teamSyncService.sync(members).stream()
+        .map(
+            report ->
+                report.error() != null
+                    ? String.format("%s: failed, %s", report.member(), report.error())
+                    : String.format(
+                        "%s: %s (%sreport: %s)",
+                        report.member(),
+                        report.outcomes().entrySet().stream()
+                            .map(outcome -> outcome.getValue() + " " + outcome.getKey())
+                            .collect(Collectors.joining(", ")),
+                        report.member().equals(report.searchedAs())
+                            ? ""
+                            : "searched with the Jira access of " + report.searchedAs() + ", ",
+                        report.reportFile()))
+        .collect(Collectors.joining("\n"));
+  }
+}
@@ -1,6 +1,53 @@
 package be.sandervl.jiraharvest.config;
 
+import java.time.DayOfWeek;
+import java.util.List;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "sync")
-public record JiraHarvestSyncConfig(Integer daysToGoBack) {}
+public record JiraHarvestSyncConfig(
+    Integer daysToGoBack,
+    Integer pageSize,
+    Integer prefetchPages,
+    Integer changelogConcurrency,
+    String stateDir,
+    Integer checkpointOverlapMinutes,
+    Integer snapshotCacheMaxMegabytes,
+    Integer harvestRequestsPerWindow,
+    Integer harvestRequestWindowSeconds,
+    Integer harvestWriteConcurrency,
+    Integer harvestMaxRetries,
+    Integer projectAssignmentsTtlMinutes,
+    String workdayStart,
+    String workdayEnd,
+    List<DayOfWeek> workingDays,
+    String holidaysFile,
+    Integer myselfCacheTtlSeconds,
+    Integer searchCacheTtlSeconds,
+    Integer timeEntriesCacheTtlSeconds,
+    Integer httpConnectTimeoutSeconds,
+    Integer httpReadTimeoutSeconds,
+    Map<String, Integer> httpHostConnectTimeoutSeconds,
+    Map<String, Integer> httpHostReadTimeoutSeconds,
+    Integer ledgerReconcileHours,
+    String teamRosterFile,
+    Integer teamConcurrency,
+    Integer daemonWorkingHoursPollSeconds,
+    Integer daemonOffHoursPollSeconds,
+    Integer daemonMaxPollSeconds,
+    Double daemonPollJitter,
+    Integer daemonStatusPort,
+    String webhookHost,
+    Integer webhookPort,
+    String webhookSecret,
+    Integer webhookDebounceMillis,
+    Integer webhookMaxDelayMillis,
+    Integer webhookReconcileSeconds,
+    String planFile,
+    Integer applyBatchSize,
+    Integer mappingRuleMinSupport,
+    Double mappingRuleMinConfidence,
+    Integer searchShardDays,
+    Integer searchShardConcurrency,
+    Integer searchShardTargetResults) {}
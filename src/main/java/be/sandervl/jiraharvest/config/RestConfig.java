@@ -1,27 +1,45 @@
 package be.sandervl.jiraharvest.config;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import be.sandervl.jiraharvest.services.HttpTransport;
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.MediaType;
-import org.springframework.http.converter.HttpMessageConverter;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
-import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class RestConfig {
   @Bean
-  public RestTemplate restTemplate() {
-    final RestTemplate restTemplate = new RestTemplate();
+  public HttpTransport httpTransport(
+      JiraHarvestSyncConfig config, ExecutorService remoteCallExecutor, SyncMetrics metrics) {
+    Map<String, Integer> connectTimeouts =
+        Optional.ofNullable(config.httpHostConnectTimeoutSeconds()).orElse(Map.of());
+    Map<String, Integer> readTimeouts =
+        Optional.ofNullable(config.httpHostReadTimeoutSeconds()).orElse(Map.of());
+    Set<String> hosts = new HashSet<>(connectTimeouts.keySet());
+    hosts.addAll(readTimeouts.keySet());
 
-    List<HttpMessageConverter<?>> messageConverters = new ArrayList<>();
-    MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
-    converter.setSupportedMediaTypes(Collections.singletonList(MediaType.ALL));
-    messageConverters.add(converter);
-    restTemplate.setMessageConverters(messageConverters);
-
-    return restTemplate;
+    Map<String, HttpTransport.Timeouts> hostTimeouts = new HashMap<>();
+    for (String host : hosts) {
+      hostTimeouts.put(
+          host,
+          new HttpTransport.Timeouts(
+              Duration.ofSeconds(
+                  connectTimeouts.getOrDefault(host, config.httpConnectTimeoutSeconds())),
+              Duration.ofSeconds(
+                  readTimeouts.getOrDefault(host, config.httpReadTimeoutSeconds()))));
+    }
+    return new HttpTransport(
+        remoteCallExecutor,
+        metrics,
+        new HttpTransport.Timeouts(
+            Duration.ofSeconds(config.httpConnectTimeoutSeconds()),
+            Duration.ofSeconds(config.httpReadTimeoutSeconds())),
+        hostTimeouts);
   }
 }
@@ -0,0 +1,122 @@
+package be.sandervl.jiraharvest.services;
+
+import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reduces an issue's changelog to the few transitions the sync needs in a single pass. Summaries
+ * are memoized per issue key and updated timestamp, so asking again for an unchanged issue is a map
+ * lookup.
+ */
+@Service
+public class ChangelogAnalyzer {
+
+  private static final int MAX_MEMOIZED = 10_000;
+
+  private final Map<String, IssueSummary> summaries = new ConcurrentHashMap<>();
+
+  public IssueSummary analyze(JiraService.BasicIssue issue) {
+    String updated = issue.fields() == null ? null : issue.fields().updated();
+    if (updated == null) {
+      return summarize(issue);
+    }
+    var memoized = summaries.get(issue.key());
+    if (memoized != null && updated.equals(memoized.updated())) {
+      return memoized;
+    }
+    if (summaries.size() >= MAX_MEMOIZED) {
+      summaries.clear();
+    }
+    var summary = summarize(issue);
+    summaries.put(issue.key(), summary);
+    return summary;
+  }
+
+  private static IssueSummary summarize(JiraService.BasicIssue issue) {
+    String firstInProgress = null;
+    long firstInProgressKey = Long.MAX_VALUE;
+    String firstLeftToDo = null;
+    long firstLeftToDoKey = Long.MAX_VALUE;
+    String lastLeftInProgress = null;
+    long lastLeftInProgressKey = Long.MIN_VALUE;
+    Set<String> previousAssignees = new HashSet<>();
+
+    var histories = issue.changelog() == null ? null : issue.changelog().histories();
+    if (histories != null) {
+      for (var history : histories) {
+        if (history.items() == null) {
+          continue;
+        }
+        long timeKey = 0;
+        boolean timeParsed = false;
+        for (var item : history.items()) {
+          if (item.fieldId() == null || item.fromString() == null) {
+            continue;
+          }
+          if (item.fieldId().equalsIgnoreCase("assignee")) {
+            if (item.from() != null) {
+              previousAssignees.add(item.from());
+            }
+            continue;
+          }
+          if (item.toStringJava() == null || !item.fieldId().equalsIgnoreCase("status")) {
+            continue;
+          }
+          if (!timeParsed) {
+            timeKey = JiraTimestamp.localSortKey(history.created());
+            timeParsed = true;
+          }
+          if (timeKey == Long.MIN_VALUE) {
+            continue;
+          }
+          if (item.toStringJava().equalsIgnoreCase("In Progress") && timeKey < firstInProgressKey) {
+            firstInProgressKey = timeKey;
+            firstInProgress = history.created();
+          }
+          if (item.fromString().equalsIgnoreCase("To Do") && timeKey < firstLeftToDoKey) {
+            firstLeftToDoKey = timeKey;
+            firstLeftToDo = history.created();
+          }
+          if (item.fromString().equalsIgnoreCase("In Progress")
+              && timeKey > lastLeftInProgressKey) {
+            lastLeftInProgressKey = timeKey;
+            lastLeftInProgress = history.created();
+          }
+        }
+      }
+    }
+
+    var assignee = issue.fields() == null ? null : issue.fields().assignee();
+    return new IssueSummary(
+        issue.key(),
+        issue.fields() == null ? null : issue.fields().updated(),
+        parse(firstInProgress),
+        parse(firstLeftToDo),
+        parse(lastLeftInProgress),
+        assignee == null ? null : assignee.accountId(),
+        Set.copyOf(previousAssignees));
+  }
+
+  private static OffsetDateTime parse(String timestamp) {
+    return timestamp == null ? null : JiraTimestamp.parse(timestamp);
+  }
+
+  public record IssueSummary(
+      String key,
+      String updated,
+      OffsetDateTime firstInProgress,
+      OffsetDateTime firstLeftToDo,
+      OffsetDateTime lastLeftInProgress,
+      String currentAssignee,
+      Set<String> previousAssignees) {
+
+    public boolean isOrWasAssignedTo(String accountId) {
+      return accountId != null
+          && (accountId.equals(currentAssignee) || previousAssignees.contains(accountId));
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package be.sandervl.jiraharvest.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over the client names of a set of project assignments, so an issue summary
+ * is matched against every client in a single pass. Task assignments are sorted once when the index
+ * is built.
+ */
+public final class ClientNameIndex {
+
+  private final List<List<Candidate>> candidatesByPattern;
+  private final List<Candidate> alwaysMatching;
+  private final char[][] transitionChars;
+  private final int[][] transitionTargets;
+  private final int[] failure;
+  private final int[][] outputs;
+
+  private ClientNameIndex(
+      List<List<Candidate>> candidatesByPattern,
+      List<Candidate> alwaysMatching,
+      char[][] transitionChars,
+      int[][] transitionTargets,
+      int[] failure,
+      int[][] outputs) {
+    this.candidatesByPattern = candidatesByPattern;
+    this.alwaysMatching = alwaysMatching;
+    this.transitionChars = transitionChars;
+    this.transitionTargets = transitionTargets;
+    this.failure = failure;
+    this.outputs = outputs;
+  }
+
+  public static ClientNameIndex of(Collection<HarvestService.ProjectAssignment> assignments) {
+    Map<String, List<Candidate>> byClientName = new LinkedHashMap<>();
+    List<Candidate> alwaysMatching = new ArrayList<>();
+    int order = 0;
+    for (var assignment : assignments) {
+      var candidate = Candidate.of(assignment, order++);
+      String clientName = assignment.client() == null ? null : assignment.client().name();
+      if (clientName == null) {
+        continue;
+      }
+      if (clientName.isEmpty()) {
+        alwaysMatching.add(candidate);
+      } else {
+        byClientName.computeIfAbsent(clientName, name -> new ArrayList<>()).add(candidate);
+      }
+    }
+
+    List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+    List<List<Integer>> nodeOutputs = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    nodeOutputs.add(new ArrayList<>());
+    List<List<Candidate>> candidatesByPattern = new ArrayList<>();
+    for (var entry : byClientName.entrySet()) {
+      int node = 0;
+      for (char c : entry.getKey().toCharArray()) {
+        Integer next = trie.get(node).get(c);
+        if (next == null) {
+          next = trie.size();
+          trie.add(new TreeMap<>());
+          nodeOutputs.add(new ArrayList<>());
+          trie.get(node).put(c, next);
+        }
+        node = next;
+      }
+      nodeOutputs.get(node).add(candidatesByPattern.size());
+      candidatesByPattern.add(List.copyOf(entry.getValue()));
+    }
+
+    int nodes = trie.size();
+    char[][] transitionChars = new char[nodes][];
+    int[][] transitionTargets = new int[nodes][];
+    for (int node = 0; node < nodes; node++) {
+      var transitions = trie.get(node);
+      transitionChars[node] = new char[transitions.size()];
+      transitionTargets[node] = new int[transitions.size()];
+      int i = 0;
+      for (var transition : transitions.entrySet()) {
+        transitionChars[node][i] = transition.getKey();
+        transitionTargets[node][i] = transition.getValue();
+        i++;
+      }
+    }
+
+    int[] failure = new int[nodes];
+    int[][] outputs = new int[nodes][];
+    outputs[0] = toArray(nodeOutputs.get(0));
+    Deque<Integer> queue = new ArrayDeque<>();
+    for (int child : transitionTargets[0]) {
+      failure[child] = 0;
+      outputs[child] = toArray(nodeOutputs.get(child));
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      int node = queue.poll();
+      for (int i = 0; i < transitionChars[node].length; i++) {
+        char c = transitionChars[node][i];
+        int child = transitionTargets[node][i];
+        int fallback = failure[node];
+        while (fallback != 0 && next(transitionChars, transitionTargets, fallback, c) < 0) {
+          fallback = failure[fallback];
+        }
+        int target = next(transitionChars, transitionTargets, fallback, c);
+        failure[child] = target < 0 || target == child ? 0 : target;
+        outputs[child] = merge(toArray(nodeOutputs.get(child)), outputs[failure[child]]);
+        queue.add(child);
+      }
+    }
+
+    return new ClientNameIndex(
+        candidatesByPattern,
+        List.copyOf(alwaysMatching),
+        transitionChars,
+        transitionTargets,
+        failure,
+        outputs);
+  }
+
+  /** Every assignment whose client name occurs in the text, in the order they were indexed. */
+  public List<Candidate> match(String text) {
+    if (text == null) {
+      return List.of();
+    }
+    BitSet matchedPatterns = new BitSet(candidatesByPattern.size());
+    int node = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int target = next(transitionChars, transitionTargets, node, c);
+      while (target < 0 && node != 0) {
+        node = failure[node];
+        target = next(transitionChars, transitionTargets, node, c);
+      }
+      node = Math.max(target, 0);
+      for (int pattern : outputs[node]) {
+        matchedPatterns.set(pattern);
+      }
+    }
+    if (matchedPatterns.isEmpty()) {
+      return alwaysMatching;
+    }
+    List<Candidate> candidates = new ArrayList<>(alwaysMatching);
+    matchedPatterns.stream()
+        .forEach(pattern -> candidates.addAll(candidatesByPattern.get(pattern)));
+    candidates.sort(Comparator.comparingInt(Candidate::order));
+    return candidates;
+  }
+
+  private static int next(char[][] transitionChars, int[][] transitionTargets, int node, char c) {
+    int i = Arrays.binarySearch(transitionChars[node], c);
+    return i < 0 ? -1 : transitionTargets[node][i];
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    return values.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static int[] merge(int[] own, int[] inherited) {
+    if (inherited.length == 0) {
+      return own;
+    }
+    int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+    System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+    return merged;
+  }
+
+  public record Candidate(
+      HarvestService.ProjectAssignment assignment,
+      List<HarvestService.TaskAssignment> sortedTasks,
+      boolean hasBillableTask,
+      boolean hasNonBillableTask,
+      int order) {
+
+    static Candidate of(HarvestService.ProjectAssignment assignment, int order) {
+      var tasks =
+          assignment.taskAssignments() == null
+              ? List.<HarvestService.TaskAssignment>of()
+              : assignment.taskAssignments();
+      return new Candidate(
+          assignment,
+          tasks.stream().sorted(matchingTaskComparator()).toList(),
+          tasks.stream().anyMatch(HarvestService.TaskAssignment::billable),
+          tasks.stream().anyMatch(task -> !task.billable()),
+          order);
+    }
+
+    public boolean hasTaskWithBillable(boolean billable) {
+      return billable ? hasBillableTask : hasNonBillableTask;
+    }
+  }
+
+  static Comparator<HarvestService.TaskAssignment> matchingTaskComparator() {
+    return (a, b) -> {
+      if (isRelevantForDevs(a) && isRelevantForDevs(b)) {
+        return a.task().name().compareTo(b.task().name());
+      }
+      if (isRelevantForDevs(a)) {
+        return -1;
+      }
+      if (isRelevantForDevs(b)) {
+        return 1;
+      }
+      return a.task().name().compareTo(b.task().name());
+    };
+  }
+
+  private static boolean isRelevantForDevs(HarvestService.TaskAssignment taskAssignment) {
+    return taskAssignment.task().name().toLowerCase().contains("billable");
+  }
+}
@@ -1,13 +1,19 @@
 package be.sandervl.jiraharvest.services;
 
 import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.env.Environment;
@@ -24,39 +30,114 @@ import org.springframework.web.client.RestTemplate;
 @Service
 public class HarvestService {
 
+  static final String TIME_ENTRIES_PATH = "/api/v2/time_entries";
+
   private final RestTemplate restTemplate;
   private final JiraHarvestSyncConfig config;
+  private final ExecutorService executor;
+  private final ResponseCache responseCache;
+  private final HttpTransport httpTransport;
+
+  @Autowired
+  public HarvestService(
+      Environment environment,
+      JiraHarvestSyncConfig config,
+      ExecutorService remoteCallExecutor,
+      ResponseCache responseCache,
+      HttpTransport httpTransport) {
+    this(
+        environment.getProperty("harvest.url"),
+        environment.getProperty("harvest.token"),
+        environment.getProperty("harvest.account-id"),
+        config,
+        remoteCallExecutor,
+        responseCache,
+        httpTransport);
+  }
 
-  public HarvestService(Environment environment, JiraHarvestSyncConfig config) {
+  private HarvestService(
+      String url,
+      String token,
+      String accountId,
+      JiraHarvestSyncConfig config,
+      ExecutorService remoteCallExecutor,
+      ResponseCache responseCache,
+      HttpTransport httpTransport) {
     List<HttpMessageConverter<?>> messageConverters = new ArrayList<>();
     MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
     converter.setSupportedMediaTypes(Collections.singletonList(MediaType.ALL));
     restTemplate =
         new RestTemplateBuilder()
-            .rootUri(environment.getProperty("harvest.url"))
-            .defaultHeader("Authorization", "Bearer " + environment.getProperty("harvest.token"))
-            .defaultHeader("Harvest-Account-ID", environment.getProperty("harvest.account-id"))
+            .rootUri(url)
+            .requestFactory(() -> httpTransport.requestFactory(url))
+            .defaultHeader("Authorization", "Bearer " + token)
+            .defaultHeader("Harvest-Account-ID", accountId)
             .messageConverters(messageConverters)
             .build();
     this.config = config;
+    this.executor = remoteCallExecutor;
+    this.responseCache = responseCache;
+    this.httpTransport = httpTransport;
+  }
+
+  /** A client for another Harvest account, with its own response cache. */
+  public HarvestService withCredentials(String url, String token, String accountId) {
+    return new HarvestService(
+        url, token, accountId, config, executor, new ResponseCache(), httpTransport);
   }
 
   public Iterable<TimeEntry> getTimeEntries() {
-    MultiValueMap<String, String> headers = new HttpHeaders();
-    HttpEntity<Object> requestEntity = new HttpEntity<>(headers);
+    try (var timeEntries = streamTimeEntries()) {
+      return timeEntries.toList();
+    }
+  }
+
+  public Stream<TimeEntry> streamTimeEntries() {
     LocalDate from = LocalDate.now().minusDays(config.daysToGoBack());
     LocalDate to = LocalDate.now();
-    return restTemplate
-        .exchange(
-            "/api/v2/time_entries?from="
-                + from.format(DateTimeFormatter.ISO_DATE)
-                + "&to="
-                + to.format(DateTimeFormatter.ISO_DATE),
-            HttpMethod.GET,
-            requestEntity,
-            new ParameterizedTypeReference<HarvestResponseTimeEntries<TimeEntry>>() {})
-        .getBody()
-        .getTimeEntries();
+    return responseCache
+        .get(
+            timeEntriesCacheKey(from, to),
+            Duration.ofSeconds(config.timeEntriesCacheTtlSeconds()),
+            () -> {
+              try (var timeEntries = fetchTimeEntries(from, to)) {
+                return timeEntries.toList();
+              }
+            })
+        .stream();
+  }
+
+  private Stream<TimeEntry> fetchTimeEntries(LocalDate from, LocalDate to) {
+    MultiValueMap<String, String> headers = new HttpHeaders();
+    HttpEntity<Object> requestEntity = new HttpEntity<>(headers);
+    return PagedFetcher.stream(
+        executor,
+        config.prefetchPages(),
+        pageIndex -> {
+          var page =
+              restTemplate
+                  .exchange(
+                      TIME_ENTRIES_PATH + "?from={from}&to={to}&page={page}",
+                      HttpMethod.GET,
+                      requestEntity,
+                      new ParameterizedTypeReference<HarvestResponseTimeEntries<TimeEntry>>() {},
+                      from.format(DateTimeFormatter.ISO_DATE),
+                      to.format(DateTimeFormatter.ISO_DATE),
+                      pageIndex + 1)
+                  .getBody();
+          if (page == null) {
+            throw new RuntimeException("Could not get Harvest time entries");
+          }
+          int totalPages =
+              page.getTotalPages() > 0
+                  ? page.getTotalPages()
+                  : page.getNextPage() != null ? pageIndex + 2 : pageIndex + 1;
+          return new PagedFetcher.Page<>(page.getTimeEntries(), totalPages);
+        });
+  }
+
+  private static String timeEntriesCacheKey(LocalDate from, LocalDate to) {
+    return "harvest:time-entries:" + from + ":" + to;
   }
 
   public Iterable<ProjectAssignment> getProjectAssignments() {
@@ -74,18 +155,78 @@ public class HarvestService {
   }
 
   public TimeEntry create(
-      Long projectId, Long taskId, LocalDate spentDate, Double hours, String notes) {
+      Long projectId,
+      Long taskId,
+      LocalDate spentDate,
+      Double hours,
+      String notes,
+      ExternalReference externalReference) {
     TimeEntryCreate body =
         new TimeEntryCreate(
-            projectId, taskId, hours, spentDate.format(DateTimeFormatter.ISO_DATE), notes);
+            projectId,
+            taskId,
+            hours,
+            spentDate.format(DateTimeFormatter.ISO_DATE),
+            notes,
+            externalReference);
     HttpEntity<TimeEntryCreate> requestEntity = new HttpEntity<>(body, new HttpHeaders());
-    return restTemplate
-        .exchange(
-            "/api/v2/time_entries",
-            HttpMethod.POST,
-            requestEntity,
-            new ParameterizedTypeReference<TimeEntry>() {})
-        .getBody();
+    var created =
+        restTemplate
+            .exchange(
+                TIME_ENTRIES_PATH,
+                HttpMethod.POST,
+                requestEntity,
+                new ParameterizedTypeReference<TimeEntry>() {})
+            .getBody();
+    if (created != null) {
+      remember(created);
+    }
+    return created;
+  }
+
+  /** The entry already booked for an external reference on a day, if there is one. */
+  public Optional<TimeEntry> findTimeEntry(
+      ExternalReference externalReference, LocalDate spentDate) {
+    MultiValueMap<String, String> headers = new HttpHeaders();
+    HttpEntity<Object> requestEntity = new HttpEntity<>(headers);
+    var page =
+        restTemplate
+            .exchange(
+                TIME_ENTRIES_PATH + "?external_reference_id={id}&from={from}&to={to}",
+                HttpMethod.GET,
+                requestEntity,
+                new ParameterizedTypeReference<HarvestResponseTimeEntries<TimeEntry>>() {},
+                externalReference.id(),
+                spentDate.format(DateTimeFormatter.ISO_DATE),
+                spentDate.format(DateTimeFormatter.ISO_DATE))
+            .getBody();
+    if (page == null || page.getTimeEntries() == null) {
+      throw new RuntimeException("Could not get Harvest time entries");
+    }
+    var found =
+        page.getTimeEntries().stream()
+            .filter(
+                entry ->
+                    entry.externalReference() != null
+                        && externalReference.id().equals(entry.externalReference().id()))
+            .findFirst();
+    found.ifPresent(this::remember);
+    return found;
+  }
+
+  private void remember(TimeEntry timeEntry) {
+    LocalDate from = LocalDate.now().minusDays(config.daysToGoBack());
+    LocalDate to = LocalDate.now();
+    if (timeEntry.spentDate() != null
+        && !timeEntry.spentDate().isBefore(from)
+        && !timeEntry.spentDate().isAfter(to)) {
+      responseCache.<List<TimeEntry>>update(
+          timeEntriesCacheKey(from, to),
+          timeEntries ->
+              timeEntries.stream().anyMatch(entry -> entry.id().equals(timeEntry.id()))
+                  ? timeEntries
+                  : Stream.concat(timeEntries.stream(), Stream.of(timeEntry)).toList());
+    }
   }
 
   public record TimeEntryCreate(
@@ -93,16 +234,24 @@ public class HarvestService {
       @JsonProperty("task_id") Long taskId,
       Double hours,
       @JsonProperty("spent_date") String spentDate,
-      String notes) {}
+      String notes,
+      @JsonProperty("external_reference") @JsonInclude(JsonInclude.Include.NON_NULL)
+          ExternalReference externalReference) {}
 
   public record TimeEntry(
+      Long id,
       double hours,
+      @JsonProperty("spent_date") LocalDate spentDate,
       @JsonProperty("created_at") LocalDateTime createdAt,
       Project project,
       Client client,
       Task task,
       String notes,
-      TaskAssignment taskAssignment) {}
+      TaskAssignment taskAssignment,
+      @JsonProperty("external_reference") ExternalReference externalReference) {}
+
+  public record ExternalReference(
+      String id, @JsonProperty("group_id") String groupId, String permalink) {}
 
   public record ProjectAssignment(
       Project project,
@@ -138,6 +287,20 @@ public class HarvestService {
     @JsonProperty("time_entries")
     private List<T> timeEntries;
 
+    @JsonProperty("per_page")
+    private int perPage;
+
+    @JsonProperty("total_pages")
+    private int totalPages;
+
+    @JsonProperty("total_entries")
+    private int totalEntries;
+
+    @JsonProperty("next_page")
+    private Integer nextPage;
+
+    private int page;
+
     public HarvestResponseTimeEntries() {}
 
     public List<T> getTimeEntries() {
@@ -147,5 +310,45 @@ public class HarvestService {
     public void setTimeEntries(List<T> timeEntries) {
       this.timeEntries = timeEntries;
     }
+
+    public int getPerPage() {
+      return perPage;
+    }
+
+    public void setPerPage(int perPage) {
+      this.perPage = perPage;
+    }
+
+    public int getTotalPages() {
+      return totalPages;
+    }
+
+    public void setTotalPages(int totalPages) {
+      this.totalPages = totalPages;
+    }
+
+    public int getTotalEntries() {
+      return totalEntries;
+    }
+
+    public void setTotalEntries(int totalEntries) {
+      this.totalEntries = totalEntries;
+    }
+
+    public Integer getNextPage() {
+      return nextPage;
+    }
+
+    public void setNextPage(Integer nextPage) {
+      this.nextPage = nextPage;
+    }
+
+    public int getPage() {
+      return page;
+    }
+
+    public void setPage(int page) {
+      this.page = page;
+    }
   }
 }
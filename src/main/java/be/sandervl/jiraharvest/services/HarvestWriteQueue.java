@@ -0,0 +1,187 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Submits Harvest time entries in the background. Writes share a token bucket sized to Harvest's
+ * request limit, and 429 or 5xx responses are retried after the server's Retry-After or a jittered
+ * exponential backoff. A POST is not idempotent: after a 5xx or a timeout Harvest may have stored
+ * the entry anyway, so the retry first looks it up by its external reference.
+ */
+@Service
+public class HarvestWriteQueue implements DisposableBean {
+
+  private static final Duration BASE_BACKOFF = Duration.ofMillis(500);
+  private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+  // tagged like the remote.call timers, so retries can be joined with them
+  private static final String ENDPOINT = SyncMetrics.endpointOf(HarvestService.TIME_ENTRIES_PATH);
+
+  private final HarvestService harvestService;
+  private final SyncMetrics metrics;
+  private final TokenBucket rateLimiter;
+  private final int maxRetries;
+  private final ExecutorService writers;
+
+  public HarvestWriteQueue(
+      HarvestService harvestService, JiraHarvestSyncConfig config, SyncMetrics metrics) {
+    this.harvestService = harvestService;
+    this.metrics = metrics;
+    this.rateLimiter =
+        new TokenBucket(
+            config.harvestRequestsPerWindow(),
+            Duration.ofSeconds(config.harvestRequestWindowSeconds()));
+    this.maxRetries = config.harvestMaxRetries();
+    AtomicInteger threadCount = new AtomicInteger();
+    this.writers =
+        Executors.newFixedThreadPool(
+            config.harvestWriteConcurrency(),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "harvest-writer-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  public CompletableFuture<HarvestService.TimeEntry> submit(
+      Long projectId,
+      Long taskId,
+      LocalDate spentDate,
+      Double hours,
+      String notes,
+      HarvestService.ExternalReference externalReference) {
+    return CompletableFuture.supplyAsync(
+        () -> create(projectId, taskId, spentDate, hours, notes, externalReference), writers);
+  }
+
+  private HarvestService.TimeEntry create(
+      Long projectId,
+      Long taskId,
+      LocalDate spentDate,
+      Double hours,
+      String notes,
+      HarvestService.ExternalReference externalReference) {
+    int attempt = 0;
+    boolean mayExist = false;
+    while (true) {
+      try {
+        if (mayExist) {
+          rateLimiter.acquire();
+          var existing = harvestService.findTimeEntry(externalReference, spentDate);
+          if (existing.isPresent()) {
+            return existing.get();
+          }
+          mayExist = false;
+        }
+        rateLimiter.acquire();
+        return harvestService.create(projectId, taskId, spentDate, hours, notes, externalReference);
+      } catch (HttpStatusCodeException e) {
+        int status = e.getStatusCode().value();
+        mayExist |= status >= 500;
+        if (!isRetryable(status)
+            || attempt >= maxRetries
+            || !canRetry(mayExist, externalReference)) {
+          throw e;
+        }
+        if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+          rateLimiter.drain();
+        }
+        metrics.remoteRetry(ENDPOINT, String.valueOf(status));
+        sleep(retryAfter(e.getResponseHeaders()).orElse(backoff(attempt)));
+      } catch (ResourceAccessException e) {
+        // the request never reached Harvest when the connection could not be made
+        mayExist |= !isConnectFailure(e);
+        if (attempt >= maxRetries || !canRetry(mayExist, externalReference)) {
+          throw e;
+        }
+        metrics.remoteRetry(ENDPOINT, "IO_ERROR");
+        sleep(backoff(attempt));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      }
+      attempt++;
+    }
+  }
+
+  private static boolean isRetryable(int status) {
+    return status == HttpStatus.TOO_MANY_REQUESTS.value() || status >= 500;
+  }
+
+  private static boolean canRetry(
+      boolean mayExist, HarvestService.ExternalReference externalReference) {
+    return !mayExist || externalReference != null;
+  }
+
+  private static boolean isConnectFailure(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ConnectException
+          || cause instanceof NoRouteToHostException
+          || cause instanceof UnknownHostException
+          || cause instanceof HttpConnectTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Optional<Duration> retryAfter(HttpHeaders headers) {
+    String retryAfter = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+    if (retryAfter == null || retryAfter.isBlank()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Duration.ofSeconds(Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException e) {
+      try {
+        var at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+        return Optional.of(Duration.between(ZonedDateTime.now(), at));
+      } catch (DateTimeParseException ignored) {
+        return Optional.empty();
+      }
+    }
+  }
+
+  private static Duration backoff(int attempt) {
+    long ceiling =
+        Math.min(MAX_BACKOFF.toMillis(), BASE_BACKOFF.toMillis() << Math.min(attempt, 16));
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(Math.max(0, duration.toMillis()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    writers.shutdown();
+  }
+}
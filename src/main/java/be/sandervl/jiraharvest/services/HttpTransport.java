@@ -0,0 +1,133 @@
+package be.sandervl.jiraharvest.services;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+public class HttpTransport {
+
+  private final Executor executor;
+  private final SyncMetrics metrics;
+  private final Timeouts defaultTimeouts;
+  private final Map<String, Timeouts> hostTimeouts;
+  private final Map<String, JdkClientHttpRequestFactory> requestFactories =
+      new ConcurrentHashMap<>();
+  private final Map<String, HostCounters> counters = new ConcurrentHashMap<>();
+
+  public HttpTransport(
+      Executor executor,
+      SyncMetrics metrics,
+      Timeouts defaultTimeouts,
+      Map<String, Timeouts> hostTimeouts) {
+    this.executor = executor;
+    this.metrics = metrics;
+    this.defaultTimeouts = defaultTimeouts;
+    this.hostTimeouts = hostTimeouts;
+  }
+
+  // one client per host, so each host gets its own connect timeout and keep-alive pool
+  public ClientHttpRequestFactory requestFactory(String rootUri) {
+    String host = URI.create(rootUri).getHost();
+    return requestFactories.computeIfAbsent(
+        host,
+        h -> {
+          Timeouts timeouts = hostTimeouts.getOrDefault(h, defaultTimeouts);
+          HttpClient client =
+              HttpClient.newBuilder()
+                  .version(HttpClient.Version.HTTP_2)
+                  .followRedirects(HttpClient.Redirect.NORMAL)
+                  .connectTimeout(timeouts.connect())
+                  .executor(executor)
+                  .build();
+          return new JdkClientHttpRequestFactory(client, timeouts.read(), this);
+        });
+  }
+
+  public List<HostStats> stats() {
+    return counters.entrySet().stream()
+        .map(entry -> entry.getValue().snapshot(entry.getKey()))
+        .sorted(Comparator.comparing(HostStats::host))
+        .toList();
+  }
+
+  SyncMetrics metrics() {
+    return metrics;
+  }
+
+  HostCounters counters(String host) {
+    return counters.computeIfAbsent(host, h -> new HostCounters());
+  }
+
+  public record Timeouts(Duration connect, Duration read) {}
+
+  public record HostStats(
+      String host,
+      long requests,
+      long failures,
+      long inFlight,
+      long http2Responses,
+      long gzipResponses,
+      long bytesReceived,
+      Duration averageLatency,
+      Duration maxLatency) {}
+
+  static class HostCounters {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder http2Responses = new LongAdder();
+    private final LongAdder gzipResponses = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    void started() {
+      requests.increment();
+      inFlight.incrementAndGet();
+    }
+
+    void completed(long nanos, boolean http2, boolean gzip) {
+      inFlight.decrementAndGet();
+      latencyNanos.add(nanos);
+      maxLatencyNanos.accumulate(nanos);
+      if (http2) {
+        http2Responses.increment();
+      }
+      if (gzip) {
+        gzipResponses.increment();
+      }
+    }
+
+    void failed() {
+      inFlight.decrementAndGet();
+      failures.increment();
+    }
+
+    void received(long bytes) {
+      bytesReceived.add(bytes);
+    }
+
+    HostStats snapshot(String host) {
+      long completed = requests.sum() - failures.sum() - inFlight.get();
+      return new HostStats(
+          host,
+          requests.sum(),
+          failures.sum(),
+          inFlight.get(),
+          http2Responses.sum(),
+          gzipResponses.sum(),
+          bytesReceived.sum(),
+          Duration.ofNanos(completed > 0 ? latencyNanos.sum() / completed : 0),
+          Duration.ofNanos(maxLatencyNanos.get()));
+    }
+  }
+}
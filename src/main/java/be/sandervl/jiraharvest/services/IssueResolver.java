@@ -0,0 +1,125 @@
+package be.sandervl.jiraharvest.services;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.stereotype.Service;
+
+@Service
+public class IssueResolver {
+
+  private final JiraIssueParser issueParser;
+  private final MappingRuleStore mappingRules;
+  private final SyncMetrics metrics;
+
+  public IssueResolver(
+      JiraIssueParser issueParser, MappingRuleStore mappingRules, SyncMetrics metrics) {
+    this.issueParser = issueParser;
+    this.mappingRules = mappingRules;
+    this.metrics = metrics;
+  }
+
+  public Resolution resolve(
+      JiraService.BasicIssue issue, ProjectAssignmentCatalog catalog, JiraService.JiraUser user) {
+    var projectAndTask = getTaskAndProjectFromIssue(issue, catalog);
+    return new Resolution(
+        issue,
+        projectAndTask.map(Tuple2::_1).orElse(null),
+        projectAndTask.map(Tuple2::_2).orElse(null),
+        issueParser.getWorkedOnTimeForIssue(issue).orElse(null),
+        issueParser
+            .getWorkedTimeForIssue(issue, user)
+            .map(Duration::toHours)
+            .map(hours -> Math.max(1d, hours))
+            .orElse(null));
+  }
+
+  public Optional<Tuple2<HarvestService.ProjectAssignment, HarvestService.TaskAssignment>>
+      getTaskAndProjectFromIssue(JiraService.BasicIssue issue, ProjectAssignmentCatalog catalog) {
+    return metrics.match(
+        issue.key(),
+        () ->
+            learnedMapping(issue, catalog)
+                .or(
+                    () ->
+                        candidates(issue, catalog)
+                            .findFirst()
+                            .map(
+                                candidate ->
+                                    Tuple.of(
+                                        candidate.assignment(), candidate.sortedTasks().get(0)))));
+  }
+
+  /**
+   * How many projects fit the issue; with more than one the resolved project is a guess. A learned
+   * mapping to another project than the one client named in the summary counts as two.
+   */
+  public long matchingProjectCount(JiraService.BasicIssue issue, ProjectAssignmentCatalog catalog) {
+    var learned = learnedMapping(issue, catalog);
+    var named = candidates(issue, catalog).toList();
+    if (learned.isEmpty()) {
+      return named.size();
+    }
+    boolean namesOtherProject =
+        named.size() == 1
+            && !named.get(0).assignment().project().id().equals(learned.get()._1().project().id());
+    return namesOtherProject ? 2 : 1;
+  }
+
+  /** Complete and matching a single project, so it can be submitted without asking. */
+  public boolean isUnambiguous(Resolution resolution, ProjectAssignmentCatalog catalog) {
+    return resolution.isComplete() && matchingProjectCount(resolution.issue(), catalog) <= 1;
+  }
+
+  public void recordCorrection(
+      JiraService.BasicIssue issue,
+      HarvestService.ProjectAssignment projectAssignment,
+      HarvestService.TaskAssignment taskAssignment) {
+    mappingRules.record(issue, projectAssignment.project().id(), taskAssignment.task().id());
+  }
+
+  // only confident rules whose project and task are still assigned
+  private Optional<Tuple2<HarvestService.ProjectAssignment, HarvestService.TaskAssignment>>
+      learnedMapping(JiraService.BasicIssue issue, ProjectAssignmentCatalog catalog) {
+    return mappingRules
+        .decide(issue)
+        .filter(MappingRuleStore.Decision::confident)
+        .flatMap(
+            decision ->
+                catalog
+                    .project(decision.projectId())
+                    .flatMap(
+                        projectAssignment ->
+                            catalog
+                                .taskAssignment(decision.projectId(), decision.taskId())
+                                .map(
+                                    taskAssignment ->
+                                        Tuple.of(projectAssignment, taskAssignment))));
+  }
+
+  private static Stream<ClientNameIndex.Candidate> candidates(
+      JiraService.BasicIssue issue, ProjectAssignmentCatalog catalog) {
+    var issueIsBillable = issue.fields().labels().contains("HARVEST-Billable");
+    return catalog.clientNameIndex().match(issue.fields().summary()).stream()
+        .filter(candidate -> candidate.hasTaskWithBillable(issueIsBillable));
+  }
+
+  /** What could be derived from an issue on its own, missing parts are {@code null}. */
+  public record Resolution(
+      JiraService.BasicIssue issue,
+      HarvestService.ProjectAssignment projectAssignment,
+      HarvestService.TaskAssignment taskAssignment,
+      LocalDate spentDate,
+      Double hours) {
+
+    public boolean isComplete() {
+      return projectAssignment != null
+          && taskAssignment != null
+          && spentDate != null
+          && hours != null;
+    }
+  }
+}
@@ -0,0 +1,316 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.stereotype.Service;
+
+/**
+ * Append-only file of Jira issue snapshots, read through a memory mapping. Every record is {@code
+ * [int keyLength][key][long updated][int payloadLength][payload]}; the in-memory index maps an
+ * issue key to its latest record. Superseded records are dropped by compaction, which also evicts
+ * the least recently updated issues once the file outgrows its size bound. Compaction writes the
+ * next generation of the file instead of replacing the mapped one, which Windows refuses to do.
+ */
+@Service
+public class IssueSnapshotCache {
+
+  private static final String SNAPSHOT_FILE = "issues.snapshots";
+  private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+  // offsets are read as ints and one mapping covers the whole file
+  private static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+
+  private final ObjectMapper objectMapper;
+  private final Path stateDir;
+  private final long maxBytes;
+  private final Map<String, Slot> index = new HashMap<>();
+  private Path snapshotFile;
+  private int generation = -1;
+  private FileChannel channel;
+  private MappedByteBuffer mapped;
+  private long size;
+  private long liveBytes;
+
+  public IssueSnapshotCache(ObjectMapper objectMapper, JiraHarvestSyncConfig config) {
+    this.objectMapper = objectMapper;
+    this.stateDir = Path.of(config.stateDir());
+    this.maxBytes = Math.min(config.snapshotCacheMaxMegabytes() * 1024L * 1024L, MAX_FILE_BYTES);
+  }
+
+  public Optional<JiraService.BasicIssue> get(String key, Instant updated) {
+    byte[] payload;
+    synchronized (this) {
+      open();
+      Slot slot = index.get(key);
+      if (slot == null || updated == null || slot.updated() != updated.toEpochMilli()) {
+        return Optional.empty();
+      }
+      payload = read(slot);
+    }
+    try {
+      return Optional.of(objectMapper.readValue(payload, JiraService.BasicIssue.class));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  public boolean contains(String key, Instant updated) {
+    synchronized (this) {
+      open();
+      Slot slot = index.get(key);
+      return slot != null && updated != null && slot.updated() == updated.toEpochMilli();
+    }
+  }
+
+  public void put(JiraService.BasicIssue issue) {
+    Instant updated = JiraIssueParser.getUpdated(issue);
+    if (updated == null) {
+      return;
+    }
+    byte[] payload;
+    try {
+      payload = objectMapper.writeValueAsBytes(issue);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not serialize issue " + issue.key(), e);
+    }
+    long recordBytes =
+        HEADER_BYTES + issue.key().getBytes(StandardCharsets.UTF_8).length + payload.length;
+    synchronized (this) {
+      open();
+      if (size + recordBytes > MAX_FILE_BYTES) {
+        compact();
+        if (size + recordBytes > MAX_FILE_BYTES) {
+          return;
+        }
+      }
+      append(issue.key(), updated.toEpochMilli(), payload);
+      if (size > maxBytes || (size > 1024 * 1024 && liveBytes * 2 < size)) {
+        compact();
+      }
+    }
+  }
+
+  public synchronized void compact() {
+    open();
+    try {
+      Path previous = snapshotFile;
+      Path compacted = generationFile(generation + 1);
+      List<Map.Entry<String, Slot>> live =
+          index.entrySet().stream()
+              .sorted(
+                  Comparator.comparingLong((Map.Entry<String, Slot> e) -> e.getValue().updated())
+                      .reversed())
+              .toList();
+      long budget = maxBytes * 3 / 4;
+      long written = 0;
+      try (FileChannel target =
+          FileChannel.open(
+              compacted,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        for (var entry : live) {
+          byte[] payload = read(entry.getValue());
+          byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+          long recordBytes = HEADER_BYTES + key.length + payload.length;
+          if (written + recordBytes > budget) {
+            break;
+          }
+          writeRecord(target, key, entry.getValue().updated(), payload);
+          written += recordBytes;
+        }
+        target.force(true);
+      }
+      close();
+      generation++;
+      snapshotFile = compacted;
+      open();
+      deleteQuietly(previous);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not compact issue snapshots " + snapshotFile, e);
+    }
+  }
+
+  private void open() {
+    if (channel != null) {
+      return;
+    }
+    try {
+      Files.createDirectories(stateDir);
+      if (generation < 0) {
+        generation = latestGeneration();
+        snapshotFile = generationFile(generation);
+      }
+      channel =
+          FileChannel.open(
+              snapshotFile,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+      size = channel.size();
+      if (size > MAX_FILE_BYTES) {
+        channel.truncate(0);
+        size = 0;
+      }
+      remap();
+      rebuildIndex();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open issue snapshots " + snapshotFile, e);
+    }
+  }
+
+  /**
+   * Picks the newest generation and removes the older ones, which could still be mapped when the
+   * last compaction tried to delete them.
+   */
+  private int latestGeneration() throws IOException {
+    List<Path> files;
+    try (var listing = Files.list(stateDir)) {
+      files = listing.filter(file -> generationOf(file) >= 0).toList();
+    }
+    int latest = files.stream().mapToInt(IssueSnapshotCache::generationOf).max().orElse(0);
+    files.stream().filter(file -> generationOf(file) < latest).forEach(this::deleteQuietly);
+    return latest;
+  }
+
+  private Path generationFile(int generation) {
+    return stateDir.resolve(generation == 0 ? SNAPSHOT_FILE : SNAPSHOT_FILE + "." + generation);
+  }
+
+  private static int generationOf(Path file) {
+    String name = file.getFileName().toString();
+    if (name.equals(SNAPSHOT_FILE)) {
+      return 0;
+    }
+    if (!name.startsWith(SNAPSHOT_FILE + ".")) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(name.substring(SNAPSHOT_FILE.length() + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // still mapped, the next start removes it
+    }
+  }
+
+  private void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+    channel = null;
+    mapped = null;
+    index.clear();
+    size = 0;
+    liveBytes = 0;
+  }
+
+  private void rebuildIndex() throws IOException {
+    index.clear();
+    liveBytes = 0;
+    long offset = 0;
+    while (offset + HEADER_BYTES <= size) {
+      int keyLength = mapped.getInt((int) offset);
+      if (keyLength <= 0 || offset + HEADER_BYTES + keyLength > size) {
+        break;
+      }
+      byte[] key = new byte[keyLength];
+      mapped.get((int) offset + Integer.BYTES, key);
+      long updated = mapped.getLong((int) offset + Integer.BYTES + keyLength);
+      int payloadLength = mapped.getInt((int) offset + Integer.BYTES + keyLength + Long.BYTES);
+      long end = offset + HEADER_BYTES + keyLength + payloadLength;
+      if (payloadLength < 0 || end > size) {
+        break;
+      }
+      index(
+          new String(key, StandardCharsets.UTF_8),
+          new Slot(offset, keyLength, updated, payloadLength));
+      offset = end;
+    }
+    if (offset < size) {
+      // a torn write from an interrupted run, drop it
+      channel.truncate(offset);
+      size = offset;
+      remap();
+    }
+  }
+
+  private void append(String key, long updated, byte[] payload) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    long offset = size;
+    try {
+      channel.position(offset);
+      writeRecord(channel, keyBytes, updated, payload);
+      size = channel.position();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not append issue snapshot " + key, e);
+    }
+    index(key, new Slot(offset, keyBytes.length, updated, payload.length));
+  }
+
+  private void index(String key, Slot slot) {
+    Slot previous = index.put(key, slot);
+    if (previous != null) {
+      liveBytes -= previous.bytes();
+    }
+    liveBytes += slot.bytes();
+  }
+
+  private byte[] read(Slot slot) {
+    if (slot.payloadOffset() + slot.payloadLength() > mapped.capacity()) {
+      try {
+        remap();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not map issue snapshots " + snapshotFile, e);
+      }
+    }
+    byte[] payload = new byte[slot.payloadLength()];
+    mapped.get((int) slot.payloadOffset(), payload);
+    return payload;
+  }
+
+  private void remap() throws IOException {
+    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+  }
+
+  private static void writeRecord(FileChannel target, byte[] key, long updated, byte[] payload)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + key.length + payload.length);
+    buffer.putInt(key.length).put(key).putLong(updated).putInt(payload.length).put(payload);
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+  }
+
+  private record Slot(long offset, int keyLength, long updated, int payloadLength) {
+
+    long payloadOffset() {
+      return offset + HEADER_BYTES + keyLength;
+    }
+
+    long bytes() {
+      return HEADER_BYTES + keyLength + payloadLength;
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package be.sandervl.jiraharvest.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+class JdkClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+  // the JDK client manages these itself and rejects them on a request
+  private static final Set<String> RESTRICTED_HEADERS =
+      Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+  private final HttpClient client;
+  private final Duration readTimeout;
+  private final HttpTransport transport;
+
+  JdkClientHttpRequestFactory(HttpClient client, Duration readTimeout, HttpTransport transport) {
+    this.client = client;
+    this.readTimeout = readTimeout;
+    this.transport = transport;
+  }
+
+  @Override
+  public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+    return new JdkClientHttpRequest(uri, httpMethod);
+  }
+
+  private class JdkClientHttpRequest implements ClientHttpRequest {
+
+    private final URI uri;
+    private final HttpMethod method;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final ByteArrayOutputStream bufferedOutput = new ByteArrayOutputStream(1024);
+
+    JdkClientHttpRequest(URI uri, HttpMethod method) {
+      this.uri = uri;
+      this.method = method;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return method;
+    }
+
+    @Override
+    public URI getURI() {
+      return uri;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public OutputStream getBody() {
+      return bufferedOutput;
+    }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      HttpRequest.Builder request =
+          HttpRequest.newBuilder(uri)
+              .timeout(readTimeout)
+              .method(
+                  method.name(),
+                  bufferedOutput.size() > 0
+                      ? HttpRequest.BodyPublishers.ofByteArray(bufferedOutput.toByteArray())
+                      : HttpRequest.BodyPublishers.noBody());
+      headers.forEach(
+          (name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+              values.forEach(value -> request.header(name, value));
+            }
+          });
+      if (!headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+        request.header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+      }
+
+      var call = new RecordedCall(uri, method);
+      HttpResponse<InputStream> response;
+      try {
+        response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+      } catch (InterruptedException e) {
+        call.failed();
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while calling " + uri);
+      } catch (IOException | RuntimeException e) {
+        call.failed();
+        throw e;
+      }
+      boolean gzip =
+          response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).stream()
+              .anyMatch(encoding -> encoding.equalsIgnoreCase("gzip"));
+      call.headersReceived(response.version() == HttpClient.Version.HTTP_2, gzip);
+      return new JdkClientHttpResponse(response, gzip, call);
+    }
+  }
+
+  /** Counts a call from sending the request until its response is closed. */
+  private class RecordedCall {
+
+    private final String host;
+    private final String method;
+    private final String endpoint;
+    private final HttpTransport.HostCounters counters;
+    private final RemoteCallEvent event = new RemoteCallEvent();
+    private final long start;
+
+    RecordedCall(URI uri, HttpMethod method) {
+      this.host = uri.getHost();
+      this.method = method.name();
+      this.endpoint = SyncMetrics.endpointOf(uri.getPath());
+      this.counters = transport.counters(host);
+      counters.started();
+      event.begin();
+      start = System.nanoTime();
+    }
+
+    void headersReceived(boolean http2, boolean gzip) {
+      counters.completed(System.nanoTime() - start, http2, gzip);
+    }
+
+    void failed() {
+      counters.failed();
+      finish("IO_ERROR", 0, 0);
+    }
+
+    void closed(int status, long bytes) {
+      counters.received(bytes);
+      finish(String.valueOf(status), status, bytes);
+    }
+
+    private void finish(String statusTag, int status, long bytes) {
+      transport
+          .metrics()
+          .remoteCall(host, method, endpoint, statusTag, bytes, System.nanoTime() - start);
+      event.end();
+      if (event.shouldCommit()) {
+        event.host = host;
+        event.method = method;
+        event.endpoint = endpoint;
+        event.status = status;
+        event.bytes = bytes;
+        event.commit();
+      }
+    }
+  }
+
+  private static class JdkClientHttpResponse implements ClientHttpResponse {
+
+    private final HttpResponse<InputStream> response;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final InputStream rawBody;
+    private final boolean gzip;
+    private final RecordedCall call;
+    private long bytesReceived;
+    private InputStream body;
+    private boolean closed;
+
+    JdkClientHttpResponse(HttpResponse<InputStream> response, boolean gzip, RecordedCall call) {
+      this.response = response;
+      this.rawBody = counting(response.body());
+      this.gzip = gzip;
+      this.call = call;
+      response.headers().map().forEach(headers::addAll);
+      if (gzip) {
+        // callers see the decompressed body, so the encoding and length no longer apply
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+      }
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() {
+      return HttpStatusCode.valueOf(response.statusCode());
+    }
+
+    @Override
+    @Deprecated
+    public int getRawStatusCode() {
+      return response.statusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+      HttpStatus status = HttpStatus.resolve(response.statusCode());
+      return status != null ? status.getReasonPhrase() : "";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        try {
+          body = gzip ? new GZIPInputStream(rawBody, 8192) : rawBody;
+        } catch (EOFException e) {
+          body = InputStream.nullInputStream();
+        }
+      }
+      return body;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        (body != null ? body : rawBody).close();
+      } catch (IOException ignored) {
+        // the connection is discarded by the client when the body cannot be drained
+      }
+      call.closed(response.statusCode(), bytesReceived);
+    }
+
+    private InputStream counting(InputStream body) {
+      return new FilterInputStream(body) {
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b >= 0) {
+            bytesReceived++;
+          }
+          return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+          int read = super.read(buffer, offset, length);
+          if (read > 0) {
+            bytesReceived += read;
+          }
+          return read;
+        }
+      };
+    }
+  }
+}
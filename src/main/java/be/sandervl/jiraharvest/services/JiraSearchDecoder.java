@@ -0,0 +1,243 @@
+package be.sandervl.jiraharvest.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseExtractor;
+
+/**
+ * Streams a Jira search response into {@link JiraService.JiraPage}s, keeping only status and
+ * assignee changes from the changelog. Every other field and history item is skipped in the token
+ * stream without being bound to an object.
+ */
+public class JiraSearchDecoder
+    implements ResponseExtractor<JiraService.JiraPage<JiraService.BasicIssue>> {
+
+  private static final Set<String> KEPT_FIELDS = Set.of("status", "assignee");
+
+  private final ObjectMapper objectMapper;
+
+  public JiraSearchDecoder(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public JiraService.JiraPage<JiraService.BasicIssue> extractData(ClientHttpResponse response)
+      throws IOException {
+    try (InputStream body = response.getBody()) {
+      return decode(body);
+    }
+  }
+
+  public JiraService.JiraPage<JiraService.BasicIssue> decode(InputStream body) throws IOException {
+    try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a Jira search response object");
+      }
+      var page = new JiraService.JiraPage<JiraService.BasicIssue>();
+      List<JiraService.BasicIssue> issues = new ArrayList<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "startAt" -> page.setStartAt(parser.getValueAsInt());
+          case "maxResults" -> page.setMaxResults(parser.getValueAsInt());
+          case "total" -> page.setTotal(parser.getValueAsInt());
+          case "isLast" -> page.setLast(parser.getValueAsBoolean());
+          case "issues" -> {
+            if (value == JsonToken.START_ARRAY) {
+              while (parser.nextToken() == JsonToken.START_OBJECT) {
+                issues.add(readIssue(parser));
+              }
+            }
+          }
+          default -> parser.skipChildren();
+        }
+      }
+      page.setIssues(issues);
+      return page;
+    }
+  }
+
+  public JiraService.ChangelogPage extractChangelogPage(ClientHttpResponse response)
+      throws IOException {
+    try (InputStream body = response.getBody();
+        JsonParser parser = objectMapper.getFactory().createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a Jira changelog response object");
+      }
+      int startAt = 0;
+      int maxResults = 0;
+      int total = 0;
+      boolean isLast = false;
+      List<JiraService.History> histories = new ArrayList<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "startAt" -> startAt = parser.getValueAsInt();
+          case "maxResults" -> maxResults = parser.getValueAsInt();
+          case "total" -> total = parser.getValueAsInt();
+          case "isLast" -> isLast = parser.getValueAsBoolean();
+          case "values" -> {
+            if (value == JsonToken.START_ARRAY) {
+              readHistories(parser, histories);
+            }
+          }
+          default -> parser.skipChildren();
+        }
+      }
+      return new JiraService.ChangelogPage(startAt, maxResults, total, isLast, histories);
+    }
+  }
+
+  JiraService.BasicIssue readIssue(JsonParser parser) throws IOException {
+    String key = null;
+    JiraService.BasicIssueFields fields = null;
+    JiraService.Changelog changelog = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case "key" -> key = parser.getValueAsString();
+        case "fields" -> fields = value == JsonToken.START_OBJECT ? readFields(parser) : null;
+        case "changelog" -> changelog =
+            value == JsonToken.START_OBJECT ? readChangelog(parser) : null;
+        default -> parser.skipChildren();
+      }
+    }
+    return new JiraService.BasicIssue(key, fields, changelog);
+  }
+
+  private JiraService.BasicIssueFields readFields(JsonParser parser) throws IOException {
+    String summary = null;
+    List<String> labels = null;
+    JiraService.JiraUser assignee = null;
+    String updated = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case "summary" -> summary = parser.getValueAsString();
+        case "updated" -> updated = parser.getValueAsString();
+        case "assignee" -> assignee = value == JsonToken.START_OBJECT ? readUser(parser) : null;
+        case "labels" -> {
+          if (value == JsonToken.START_ARRAY) {
+            labels = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+              labels.add(parser.getValueAsString());
+            }
+          }
+        }
+        default -> parser.skipChildren();
+      }
+    }
+    return new JiraService.BasicIssueFields(
+        summary, labels == null ? List.of() : labels, assignee, updated);
+  }
+
+  private static JiraService.JiraUser readUser(JsonParser parser) throws IOException {
+    String accountId = null;
+    String emailAddress = null;
+    String displayName = null;
+    String active = null;
+    String timeZone = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "accountId" -> accountId = parser.getValueAsString();
+        case "emailAddress" -> emailAddress = parser.getValueAsString();
+        case "displayName" -> displayName = parser.getValueAsString();
+        case "active" -> active = parser.getValueAsString();
+        case "timeZone" -> timeZone = parser.getValueAsString();
+        default -> parser.skipChildren();
+      }
+    }
+    return new JiraService.JiraUser(accountId, emailAddress, displayName, active, timeZone);
+  }
+
+  JiraService.Changelog readChangelog(JsonParser parser) throws IOException {
+    List<JiraService.History> histories = new ArrayList<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      if (field.equals("histories") && value == JsonToken.START_ARRAY) {
+        readHistories(parser, histories);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return new JiraService.Changelog(histories);
+  }
+
+  void readHistories(JsonParser parser, List<JiraService.History> histories) throws IOException {
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      var history = readHistory(parser);
+      if (history != null) {
+        histories.add(history);
+      }
+    }
+  }
+
+  private JiraService.History readHistory(JsonParser parser) throws IOException {
+    String created = null;
+    List<JiraService.HistoryItem> items = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      if (field.equals("created")) {
+        created = parser.getValueAsString();
+      } else if (field.equals("items") && value == JsonToken.START_ARRAY) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          var item = readItem(parser);
+          if (item != null) {
+            if (items == null) {
+              items = new ArrayList<>(1);
+            }
+            items.add(item);
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return items == null ? null : new JiraService.History(created, items);
+  }
+
+  private JiraService.HistoryItem readItem(JsonParser parser) throws IOException {
+    String fieldName = null;
+    String fieldType = null;
+    String fieldId = null;
+    String from = null;
+    String fromString = null;
+    String to = null;
+    String toString = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "field" -> fieldName = parser.getValueAsString();
+        case "fieldtype", "fieldType" -> fieldType = parser.getValueAsString();
+        case "fieldId" -> fieldId = parser.getValueAsString();
+        case "from" -> from = parser.getValueAsString();
+        case "fromString" -> fromString = parser.getValueAsString();
+        case "to" -> to = parser.getValueAsString();
+        case "toString" -> toString = parser.getValueAsString();
+        default -> parser.skipChildren();
+      }
+    }
+    String id = fieldId != null ? fieldId : fieldName;
+    if (id == null || !KEPT_FIELDS.contains(id.toLowerCase())) {
+      return null;
+    }
+    return new JiraService.HistoryItem(
+        fieldName, fieldType, fieldId, from, fromString, to, toString);
+  }
+}
@@ -3,15 +3,42 @@ package be.sandervl.jiraharvest.services;
 import be.sandervl.jiraharvest.config.JiraConfig;
 import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.DateTimeException;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
@@ -19,22 +46,348 @@ import org.springframework.web.client.RestTemplate;
 @Service
 public class JiraService {
 
+  private static final DateTimeFormatter JQL_DATE_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
+  private static final String ISSUE_FIELDS = "summary,labels,assignee,updated";
+  private static final int CHANGELOG_PAGE_SIZE = 100;
+  private static final long MIN_SHARD_MINUTES = 60;
+  private static final int KEYS_PER_SEARCH = 50;
+  static final List<String> HARVEST_LABELS = List.of("HARVEST-Billable", "HARVEST-NON-Billable");
+  // done and in progress
+  static final List<Integer> BOOKABLE_STATUS_CATEGORIES = List.of(4, 3);
+
     private final RestTemplate restClient;
   private final JiraIssueParser jiraIssueParser;
   private final JiraHarvestSyncConfig config;
+  private final ExecutorService executor;
+  private final IssueSnapshotCache snapshotCache;
+  private final JiraSearchDecoder searchDecoder;
+  private final Semaphore changelogPermits;
+  private final ResponseCache responseCache;
+  private final String jiraUrl;
+  private final SyncMetrics metrics;
+  private final ObjectMapper objectMapper;
+  private final HttpTransport httpTransport;
 
   public JiraService(
-      JiraIssueParser jiraIssueParser, JiraHarvestSyncConfig config, JiraConfig jiraConfig) {
+      JiraIssueParser jiraIssueParser,
+      JiraHarvestSyncConfig config,
+      JiraConfig jiraConfig,
+      ExecutorService remoteCallExecutor,
+      IssueSnapshotCache snapshotCache,
+      ObjectMapper objectMapper,
+      ResponseCache responseCache,
+      HttpTransport httpTransport,
+      SyncMetrics metrics) {
     restClient =
         new RestTemplateBuilder()
             .rootUri(jiraConfig.url())
+            .requestFactory(() -> httpTransport.requestFactory(jiraConfig.url()))
             .basicAuthentication(jiraConfig.username(), jiraConfig.token())
             .build();
     this.jiraIssueParser = jiraIssueParser;
     this.config = config;
+    this.executor = remoteCallExecutor;
+    this.snapshotCache = snapshotCache;
+    this.searchDecoder = new JiraSearchDecoder(objectMapper);
+    this.changelogPermits = new Semaphore(config.changelogConcurrency());
+    this.responseCache = responseCache;
+    this.jiraUrl = jiraConfig.url();
+    this.metrics = metrics;
+    this.objectMapper = objectMapper;
+    this.httpTransport = httpTransport;
+  }
+
+  /** A client for another Jira account, sharing the snapshot cache but not the response cache. */
+  public JiraService withCredentials(JiraConfig jiraConfig) {
+    return new JiraService(
+        jiraIssueParser,
+        config,
+        jiraConfig,
+        executor,
+        snapshotCache,
+        objectMapper,
+        new ResponseCache(),
+        httpTransport,
+        metrics);
+  }
+
+  public String url() {
+    return jiraUrl;
   }
 
   public Iterable<BasicIssue> getIssues() {
+    return getIssuesUpdatedSince(getCurrentUser(), windowStart());
+  }
+
+  public HarvestService.ExternalReference externalReference(String issueKey) {
+    return new HarvestService.ExternalReference(
+        issueKey, issueKey.substring(0, issueKey.indexOf('-')), jiraUrl + "/browse/" + issueKey);
+  }
+
+  public Instant windowStart() {
+    return Instant.now().minus(Duration.ofDays(config.daysToGoBack()));
+  }
+
+  public Iterable<BasicIssue> getIssuesUpdatedSince(JiraUser currentUser, Instant since) {
+    return () ->
+        searchIssuesAssignedTo(currentUser, List.of(currentUser), since)
+            .filter(issue -> isWorkedOnBy(currentUser, issue))
+            .iterator();
+  }
+
+  /**
+   * The issues updated since the checkpoint of a run, followed by the given earlier ones, such as
+   * issues left for a review, that still match the search. A cached search tells the run when it
+   * ran, so the high-water mark never moves past updates it could not have seen.
+   */
+  public Iterable<BasicIssue> getIssuesUpdatedSince(
+      JiraUser currentUser, SyncCheckpointStore.Run run, Collection<String> earlierKeys) {
+    Instant since = run.since(windowStart());
+    Set<String> seenKeys = ConcurrentHashMap.newKeySet();
+    return () ->
+        Stream.<Supplier<Stream<BasicIssue>>>of(
+                () ->
+                    searchIssuesAssignedTo(
+                        currentUser, List.of(currentUser), since, run::searchedAt),
+                () ->
+                    earlierKeys.isEmpty()
+                        ? Stream.empty()
+                        : searchIssuesByKey(assignedFilter(List.of(currentUser)), earlierKeys))
+            .flatMap(Supplier::get)
+            .filter(issue -> seenKeys.add(issue.key()))
+            .filter(issue -> isWorkedOnBy(currentUser, issue))
+            .iterator();
+  }
+
+  /**
+   * Issues any of the assignees has or had assigned. Jira reads the dates in the JQL in the time
+   * zone of the searching user. A window longer than one shard is searched in {@code updated}
+   * shards. The candidate list is cached on the query without its {@code updated} bound, so any
+   * later window within the cached one is filtered locally instead of searched again.
+   */
+  public Stream<BasicIssue> searchIssuesAssignedTo(
+      JiraUser searcher, Collection<JiraUser> assignees, Instant since) {
+    return searchIssuesAssignedTo(searcher, assignees, since, searchedAt -> {});
+  }
+
+  private Stream<BasicIssue> searchIssuesAssignedTo(
+      JiraUser searcher,
+      Collection<JiraUser> assignees,
+      Instant since,
+      Consumer<Instant> searchedAt) {
+    String filter = assignedFilter(assignees);
+    ZoneId zone = zoneOf(searcher);
+    if (config.searchCacheTtlSeconds() <= 0) {
+      return isSharded(since)
+          ? withChangelogsInChunks(candidates(filter, since, zone))
+          : searchIssues(String.format(filter, updatedRange(since, null, zone)));
+    }
+    String key = "jira:search:" + String.format(filter, "updated >= ?");
+    Duration ttl = Duration.ofSeconds(config.searchCacheTtlSeconds());
+    Supplier<Candidates> search =
+        () -> new Candidates(since, Instant.now(), candidates(filter, since, zone));
+    var cached = responseCache.get(key, ttl, search);
+    if (cached.since().isAfter(since)) {
+      responseCache.invalidate(key);
+      cached = responseCache.get(key, ttl, search);
+    }
+    searchedAt.accept(cached.searchedAt());
+    // Jira compares updated at minute precision
+    Instant from = since.truncatedTo(ChronoUnit.MINUTES);
+    return withChangelogsInChunks(
+        cached.issues().stream()
+            .filter(
+                candidate -> {
+                  Instant updated = JiraIssueParser.getUpdated(candidate);
+                  return updated != null && !updated.isBefore(from);
+                })
+            .toList());
+  }
+
+  /** The search JQL with a {@code %s} placeholder for the {@code updated} or key clause. */
+  private static String assignedFilter(Collection<JiraUser> assignees) {
+    String accountIds =
+        assignees.stream()
+            .map(assignee -> "\"" + assignee.accountId() + "\"")
+            .distinct()
+            .collect(Collectors.joining(", "));
+    return "labels in ("
+        + String.join(", ", HARVEST_LABELS)
+        + ") AND %s AND statusCategory in ("
+        + BOOKABLE_STATUS_CATEGORIES.stream().map(String::valueOf).collect(Collectors.joining(", "))
+        + ") AND (assignee in ("
+        + accountIds
+        + ") OR assignee WAS IN ("
+        + accountIds
+        + ")) ORDER BY updated DESC";
+  }
+
+  // warns instead of failing on keys of issues deleted or moved since they were stored
+  private Stream<BasicIssue> searchIssuesByKey(String filter, Collection<String> keys) {
+    List<String> sortedKeys = keys.stream().sorted().toList();
+    return Stream.iterate(0, from -> from < sortedKeys.size(), from -> from + KEYS_PER_SEARCH)
+        .flatMap(
+            from ->
+                search(
+                    String.format(
+                        filter,
+                        "issuekey in ("
+                            + String.join(
+                                ", ",
+                                sortedKeys.subList(
+                                    from, Math.min(sortedKeys.size(), from + KEYS_PER_SEARCH)))
+                            + ")"),
+                    ISSUE_FIELDS,
+                    "",
+                    "warn",
+                    this::withChangelogs));
+  }
+
+  private boolean isSharded(Instant since) {
+    return config.searchShardDays() > 0
+        && since.isBefore(Instant.now().minus(Duration.ofDays(config.searchShardDays())));
+  }
+
+  private List<BasicIssue> candidates(String filter, Instant since, ZoneId zone) {
+    if (isSharded(since)) {
+      return shardedCandidates(filter, since, zone, Duration.ofDays(config.searchShardDays()));
+    }
+    String jql = String.format(filter, updatedRange(since, null, zone));
+    Set<String> seenKeys = new HashSet<>();
+    try (var found = search(jql, ISSUE_FIELDS, "", "strict", UnaryOperator.identity())) {
+      return found.filter(candidate -> seenKeys.add(candidate.key())).toList();
+    }
+  }
+
+  /** Candidates updated since a moment, without their changelogs, as searched at a moment. */
+  private record Candidates(Instant since, Instant searchedAt, List<BasicIssue> issues) {}
+
+  /**
+   * Fetches the candidates in contiguous {@code updated} shards, newest first and a few at a time.
+   * Every finished shard updates the estimate of results per minute, and later shards are sized to
+   * return about {@code searchShardTargetResults} issues each. No shard spans more than the first
+   * one. An issue updated during the fetch can show up in two shards, the latest copy wins.
+   */
+  private List<BasicIssue> shardedCandidates(
+      String filter, Instant since, ZoneId zone, Duration initialShardSize) {
+    CompletionService<Shard> shards = new ExecutorCompletionService<>(executor);
+    Map<String, BasicIssue> merged = new HashMap<>();
+    Instant upper = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+    Double resultsPerMinute = null;
+    boolean newest = true;
+    int inFlight = 0;
+    while (true) {
+      while (inFlight < config.searchShardConcurrency() && upper.isAfter(since)) {
+        Duration remaining = Duration.between(since, upper);
+        Duration size = shardSize(resultsPerMinute, initialShardSize);
+        Instant lower =
+            size.compareTo(remaining) >= 0
+                ? since
+                : upper.minus(size).truncatedTo(ChronoUnit.MINUTES);
+        Instant shardUpper = upper;
+        // the newest shard is open ended, so issues updated while searching are not missed
+        String jql = String.format(filter, updatedRange(lower, newest ? null : upper, zone));
+        shards.submit(
+            () -> {
+              try (var found = search(jql, ISSUE_FIELDS, "", "strict", UnaryOperator.identity())) {
+                return new Shard(lower, shardUpper, found.toList());
+              }
+            });
+        inFlight++;
+        newest = false;
+        upper = lower;
+      }
+      if (inFlight == 0) {
+        break;
+      }
+      Shard shard = takeShard(shards);
+      inFlight--;
+      double minutes = Math.max(1, Duration.between(shard.lower(), shard.upper()).toMinutes());
+      double density = shard.issues().size() / minutes;
+      // a shard far over target replaces the estimate, so the next one is not still sized too big
+      resultsPerMinute =
+          resultsPerMinute == null || shard.issues().size() > 2 * config.searchShardTargetResults()
+              ? density
+              : (resultsPerMinute + density) / 2;
+      for (var issue : shard.issues()) {
+        merged.merge(issue.key(), issue, JiraService::latest);
+      }
+    }
+    return merged.values().stream()
+        .sorted(
+            Comparator.comparing(
+                    JiraIssueParser::getUpdated, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .reversed())
+        .toList();
+  }
+
+  /** Between an hour and the configured shard size, empty shards never grow it past that. */
+  private Duration shardSize(Double resultsPerMinute, Duration initialShardSize) {
+    if (resultsPerMinute == null || resultsPerMinute <= 0) {
+      return initialShardSize;
+    }
+    long minutes = (long) (config.searchShardTargetResults() / resultsPerMinute);
+    return Duration.ofMinutes(
+        Math.min(initialShardSize.toMinutes(), Math.max(MIN_SHARD_MINUTES, minutes)));
+  }
+
+  private static Shard takeShard(CompletionService<Shard> shards) {
+    try {
+      return shards.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while searching Jira issues", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException("Could not search Jira issues", e.getCause());
+    }
+  }
+
+  private static BasicIssue latest(BasicIssue known, BasicIssue found) {
+    Instant knownUpdated = JiraIssueParser.getUpdated(known);
+    Instant foundUpdated = JiraIssueParser.getUpdated(found);
+    return knownUpdated == null || (foundUpdated != null && foundUpdated.isAfter(knownUpdated))
+        ? found
+        : known;
+  }
+
+  private static String updatedRange(Instant from, Instant until, ZoneId zone) {
+    String range = "updated >= \"" + JQL_DATE_FORMAT.format(from.atZone(zone)) + "\"";
+    return until == null
+        ? range
+        : range + " AND updated < \"" + JQL_DATE_FORMAT.format(until.atZone(zone)) + "\"";
+  }
+
+  private record Shard(Instant lower, Instant upper, List<BasicIssue> issues) {}
+
+  public boolean isWorkedOnBy(JiraUser user, BasicIssue issue) {
+    return jiraIssueParser.isCurrentAssigneeOrWasAssigneeInChangelog(user, issue)
+        && jiraIssueParser
+            .getWorkedOnTimeForIssue(issue)
+            .map(
+                d ->
+                    Duration.between(d.atStartOfDay(), LocalDateTime.now()).toDays()
+                        < config.daysToGoBack())
+            .orElse(false);
+  }
+
+  private static ZoneId zoneOf(JiraUser user) {
+    try {
+      return user.timeZone() != null ? ZoneId.of(user.timeZone()) : ZoneId.systemDefault();
+    } catch (DateTimeException e) {
+      return ZoneId.systemDefault();
+    }
+  }
+
+  public JiraUser getCurrentUser() {
+    return responseCache.get(
+        "jira:myself", Duration.ofSeconds(config.myselfCacheTtlSeconds()), this::fetchCurrentUser);
+  }
+
+  private JiraUser fetchCurrentUser() {
     MultiValueMap<String, String> headers = new HttpHeaders();
     HttpEntity<Object> requestEntity = new HttpEntity<>(headers);
     var currentUser =
@@ -49,31 +402,138 @@ public class JiraService {
     if (currentUser == null) {
       throw new RuntimeException("Could not get current user");
     }
-    int daysToGoBack = config.daysToGoBack();
-    List<BasicIssue> issues =
-        restClient
-            .exchange(
-                "/rest/api/2/search?expand=changelog&jql=labels in (HARVEST-Billable, HARVEST-NON-Billable) AND updated > -"
-                    + daysToGoBack
-                    + "d AND statusCategory in (4, 3) ORDER BY updated DESC",
-                HttpMethod.GET,
-                requestEntity,
-                new ParameterizedTypeReference<JiraPage<BasicIssue>>() {})
-            .getBody()
-            .getIssues()
-            .stream()
-            .filter(
-                issue ->
-                    JiraIssueParser.isCurrentAssigneeOrWasAssigneeInChangelog(currentUser, issue)
-                        && jiraIssueParser
-                            .getWorkedOnTimeForIssue(issue)
-                            .map(
-                                d ->
-                                    Duration.between(d.atStartOfDay(), LocalDateTime.now()).toDays()
-                                        < daysToGoBack)
-                            .orElse(false))
-            .collect(Collectors.toList());
-    return issues;
+    return currentUser;
+  }
+
+  public Stream<BasicIssue> searchIssues(String jql) {
+    Set<String> seenKeys = ConcurrentHashMap.newKeySet();
+    return search(
+        jql,
+        ISSUE_FIELDS,
+        "",
+        "strict",
+        candidates ->
+            withChangelogs(
+                candidates.stream().filter(candidate -> seenKeys.add(candidate.key())).toList()));
+  }
+
+  private Stream<BasicIssue> withChangelogsInChunks(List<BasicIssue> candidates) {
+    int chunkSize = config.pageSize();
+    return PagedFetcher.stream(
+        executor,
+        config.prefetchPages(),
+        chunkIndex ->
+            new PagedFetcher.Page<>(
+                withChangelogs(
+                    candidates.subList(
+                        Math.min(candidates.size(), chunkIndex * chunkSize),
+                        Math.min(candidates.size(), (chunkIndex + 1) * chunkSize))),
+                PagedFetcher.pageCount(candidates.size(), chunkSize)));
+  }
+
+  private List<BasicIssue> withChangelogs(List<BasicIssue> candidates) {
+    List<CompletableFuture<BasicIssue>> issues = new ArrayList<>(candidates.size());
+    for (var candidate : candidates) {
+      var cached = snapshotCache.get(candidate.key(), JiraIssueParser.getUpdated(candidate));
+      metrics.changelogCache(cached.isPresent());
+      if (cached.isPresent()) {
+        issues.add(CompletableFuture.completedFuture(cached.get()));
+        continue;
+      }
+      issues.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                var issue =
+                    new BasicIssue(
+                        candidate.key(), candidate.fields(), getChangelog(candidate.key()));
+                snapshotCache.put(issue);
+                return issue;
+              },
+              executor));
+    }
+    try {
+      return issues.stream().map(CompletableFuture::join).toList();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  public Changelog getChangelog(String issueKey) {
+    try {
+      changelogPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while fetching the changelog of " + issueKey, e);
+    }
+    try (var histories =
+        PagedFetcher.stream(
+            executor,
+            1,
+            pageIndex -> {
+              var page =
+                  restClient.execute(
+                      "/rest/api/2/issue/{key}/changelog?startAt={startAt}&maxResults={maxResults}",
+                      HttpMethod.GET,
+                      request ->
+                          request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                      searchDecoder::extractChangelogPage,
+                      issueKey,
+                      pageIndex * CHANGELOG_PAGE_SIZE,
+                      CHANGELOG_PAGE_SIZE);
+              if (page == null) {
+                throw new RuntimeException("Could not get the changelog of " + issueKey);
+              }
+              int totalPages =
+                  page.isLast() && pageIndex == 0
+                      ? 1
+                      : PagedFetcher.pageCount(page.total(), CHANGELOG_PAGE_SIZE);
+              return new PagedFetcher.Page<>(page.histories(), totalPages);
+            })) {
+      return new Changelog(histories.toList());
+    } finally {
+      changelogPermits.release();
+    }
+  }
+
+  private Stream<BasicIssue> search(
+      String jql,
+      String fields,
+      String expand,
+      String validateQuery,
+      UnaryOperator<List<BasicIssue>> pageMapper) {
+    // Jira may cap maxResults below what we ask for, the first page tells us the real size
+    AtomicInteger pageSize = new AtomicInteger(config.pageSize());
+    return PagedFetcher.stream(
+        executor,
+        config.prefetchPages(),
+        pageIndex -> {
+          var page =
+              restClient.execute(
+                  "/rest/api/2/search?jql={jql}&fields={fields}&expand={expand}&validateQuery={validateQuery}&startAt={startAt}&maxResults={maxResults}",
+                  HttpMethod.GET,
+                  request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                  searchDecoder,
+                  jql,
+                  fields,
+                  expand,
+                  validateQuery,
+                  pageIndex * pageSize.get(),
+                  pageSize.get());
+          if (page == null) {
+            throw new RuntimeException("Could not search Jira issues");
+          }
+          if (pageIndex == 0 && page.getMaxResults() > 0) {
+            pageSize.set(Math.min(pageSize.get(), page.getMaxResults()));
+          }
+          int totalPages =
+              page.isLast() && pageIndex == 0
+                  ? 1
+                  : PagedFetcher.pageCount(page.getTotal(), pageSize.get());
+          return new PagedFetcher.Page<>(pageMapper.apply(page.getIssues()), totalPages);
+        });
   }
 
     public record JiraUser(String accountId, String emailAddress, String displayName, String active, String timeZone) {
@@ -89,10 +549,15 @@ public class JiraService {
     public record Changelog(List<History> histories) {
     }
 
+    public record ChangelogPage(
+            int startAt, int maxResults, int total, boolean isLast, List<History> histories) {
+    }
+
     public record BasicIssue(String key, BasicIssueFields fields, Changelog changelog) {
     }
 
-    public record BasicIssueFields(String summary, List<String> labels, JiraUser assignee) {
+    public record BasicIssueFields(
+            String summary, List<String> labels, JiraUser assignee, String updated) {
     }
 
     public static class JiraPage<T> {
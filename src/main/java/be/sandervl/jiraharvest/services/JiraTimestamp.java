@@ -0,0 +1,105 @@
+package be.sandervl.jiraharvest.services;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parser for Jira timestamps like {@code 2023-03-01T10:15:30.123+0100} that reads the fixed
+ * positions directly instead of going through a pattern formatter. Anything else falls back to the
+ * formatter.
+ */
+public final class JiraTimestamp {
+
+  private static final DateTimeFormatter FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+  private static final int LENGTH = "yyyy-MM-ddTHH:mm:ss.SSS+hhmm".length();
+
+  private JiraTimestamp() {}
+
+  /**
+   * Orders timestamps on their local date and time, ignoring the offset, the same way comparing the
+   * parsed {@link LocalDateTime}s does. Returns {@link Long#MIN_VALUE} when unparseable.
+   */
+  public static long localSortKey(String value) {
+    if (!isWellFormed(value)) {
+      try {
+        var parsed = LocalDateTime.parse(value, FORMAT);
+        return sortKey(
+            parsed.getYear(),
+            parsed.getMonthValue(),
+            parsed.getDayOfMonth(),
+            parsed.getHour(),
+            parsed.getMinute(),
+            parsed.getSecond(),
+            parsed.getNano() / 1_000_000);
+      } catch (DateTimeException | NullPointerException e) {
+        return Long.MIN_VALUE;
+      }
+    }
+    return sortKey(
+        digits(value, 0, 4),
+        digits(value, 5, 2),
+        digits(value, 8, 2),
+        digits(value, 11, 2),
+        digits(value, 14, 2),
+        digits(value, 17, 2),
+        digits(value, 20, 3));
+  }
+
+  public static OffsetDateTime parse(String value) {
+    if (!isWellFormed(value)) {
+      return OffsetDateTime.parse(value, FORMAT);
+    }
+    int offsetSeconds = (digits(value, 24, 2) * 60 + digits(value, 26, 2)) * 60;
+    return OffsetDateTime.of(
+        digits(value, 0, 4),
+        digits(value, 5, 2),
+        digits(value, 8, 2),
+        digits(value, 11, 2),
+        digits(value, 14, 2),
+        digits(value, 17, 2),
+        digits(value, 20, 3) * 1_000_000,
+        ZoneOffset.ofTotalSeconds(value.charAt(23) == '-' ? -offsetSeconds : offsetSeconds));
+  }
+
+  private static boolean isWellFormed(String value) {
+    if (value == null || value.length() != LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < LENGTH; i++) {
+      char c = value.charAt(i);
+      boolean valid =
+          switch (i) {
+            case 4, 7 -> c == '-';
+            case 10 -> c == 'T';
+            case 13, 16 -> c == ':';
+            case 19 -> c == '.';
+            case 23 -> c == '+' || c == '-';
+            default -> c >= '0' && c <= '9';
+          };
+      if (!valid) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int digits(String value, int start, int length) {
+    int result = 0;
+    for (int i = start; i < start + length; i++) {
+      result = result * 10 + (value.charAt(i) - '0');
+    }
+    return result;
+  }
+
+  private static long sortKey(
+      int year, int month, int day, int hour, int minute, int second, int millis) {
+    return ((((((long) year * 13 + month) * 32 + day) * 24 + hour) * 60 + minute) * 60 + second)
+            * 1000
+        + millis;
+  }
+}
@@ -0,0 +1,262 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.stereotype.Service;
+
+/**
+ * Receives Jira {@code jira:issue_updated} webhooks. Only status and assignee transitions on issues
+ * the sync search would find are kept, with the same labels and status categories; bursts of events
+ * for one issue are coalesced until the issue has been quiet for the debounce delay, and dropped
+ * when its latest event no longer matches. The issue's changelog is then fetched once, stored as
+ * its snapshot and handed to the sink without a search call. Events that never arrive are covered
+ * by the daemon's reconcile poll.
+ */
+@Service
+public class JiraWebhookReceiver {
+
+  private static final Logger LOG = Logger.getLogger(JiraWebhookReceiver.class.getName());
+  private static final String ISSUE_UPDATED = "jira:issue_updated";
+  private static final Set<String> TRACKED_FIELDS = Set.of("status", "assignee");
+
+  private final JiraService jiraService;
+  private final IssueSnapshotCache snapshotCache;
+  private final ObjectMapper objectMapper;
+  private final JiraHarvestSyncConfig config;
+  private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong ignored = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  private HttpServer server;
+  private ScheduledExecutorService debouncer;
+  private Consumer<JiraService.BasicIssue> sink;
+
+  public JiraWebhookReceiver(
+      JiraService jiraService,
+      IssueSnapshotCache snapshotCache,
+      ObjectMapper objectMapper,
+      JiraHarvestSyncConfig config) {
+    this.jiraService = jiraService;
+    this.snapshotCache = snapshotCache;
+    this.objectMapper = objectMapper;
+    this.config = config;
+  }
+
+  public synchronized void start(Consumer<JiraService.BasicIssue> sink) {
+    if (isRunning()) {
+      return;
+    }
+    this.sink = sink;
+    AtomicInteger threadCount = new AtomicInteger();
+    debouncer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "jira-webhook-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      server =
+          HttpServer.create(new InetSocketAddress(config.webhookHost(), config.webhookPort()), 0);
+    } catch (IOException e) {
+      debouncer.shutdownNow();
+      throw new UncheckedIOException(
+          "Could not start the Jira webhook receiver on port " + config.webhookPort(), e);
+    }
+    server.createContext("/jira/webhook", this::handle);
+    server.start();
+  }
+
+  public synchronized void stop() {
+    if (!isRunning()) {
+      return;
+    }
+    server.stop(0);
+    server = null;
+    debouncer.shutdownNow();
+    pending.clear();
+  }
+
+  public synchronized boolean isRunning() {
+    return server != null;
+  }
+
+  public Stats stats() {
+    return new Stats(
+        isRunning(), received.get(), ignored.get(), pending.size(), delivered.get(), failed.get());
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      if (!hasValidSignature(exchange.getRequestHeaders().getFirst("X-Hub-Signature"), body)) {
+        exchange.sendResponseHeaders(401, -1);
+        return;
+      }
+      received.incrementAndGet();
+      JsonNode event;
+      try {
+        event = objectMapper.readTree(body);
+      } catch (IOException e) {
+        exchange.sendResponseHeaders(400, -1);
+        return;
+      }
+      if (!accept(event)) {
+        ignored.incrementAndGet();
+      }
+      // Jira retries anything that is not a 2xx, ignored events included
+      exchange.sendResponseHeaders(202, -1);
+    }
+  }
+
+  private boolean accept(JsonNode event) {
+    if (!ISSUE_UPDATED.equals(event.path("webhookEvent").asText())) {
+      return false;
+    }
+    JsonNode issue = event.path("issue");
+    String key = issue.path("key").asText(null);
+    boolean harvestLabelled = false;
+    for (JsonNode label : issue.path("fields").path("labels")) {
+      harvestLabelled |= JiraService.HARVEST_LABELS.contains(label.asText());
+    }
+    boolean bookable =
+        harvestLabelled
+            && JiraService.BOOKABLE_STATUS_CATEGORIES.contains(
+                issue.path("fields").path("status").path("statusCategory").path("id").asInt(-1));
+    boolean tracked = false;
+    for (JsonNode item : event.path("changelog").path("items")) {
+      tracked |= TRACKED_FIELDS.contains(item.path("field").asText());
+    }
+    // an issue that stops matching still replaces its queued events, so it is not booked
+    if (key == null || !tracked || (!bookable && !pending.containsKey(key))) {
+      return false;
+    }
+    JiraService.BasicIssueFields fields;
+    try {
+      fields = objectMapper.treeToValue(issue.path("fields"), JiraService.BasicIssueFields.class);
+    } catch (IOException e) {
+      return false;
+    }
+    enqueue(key, fields, bookable);
+    return bookable;
+  }
+
+  private void enqueue(String key, JiraService.BasicIssueFields fields, boolean bookable) {
+    long now = System.nanoTime();
+    pending.compute(
+        key,
+        (k, current) -> {
+          var next =
+              current == null
+                  ? new Pending(fields, bookable, now, null)
+                  : current.with(fields, bookable);
+          if (next.timer() != null) {
+            next.timer().cancel(false);
+          }
+          // a steady stream of events would otherwise postpone the issue forever
+          long delay =
+              Math.min(
+                  TimeUnit.MILLISECONDS.toNanos(config.webhookDebounceMillis()),
+                  next.firstEventAt()
+                      + TimeUnit.MILLISECONDS.toNanos(config.webhookMaxDelayMillis())
+                      - now);
+          return next.withTimer(
+              debouncer.schedule(() -> flush(k), Math.max(0, delay), TimeUnit.NANOSECONDS));
+        });
+  }
+
+  private void flush(String key) {
+    var events = pending.remove(key);
+    if (events == null || !events.bookable()) {
+      return;
+    }
+    try {
+      sink.accept(merge(key, events));
+      delivered.incrementAndGet();
+    } catch (RuntimeException e) {
+      failed.incrementAndGet();
+      LOG.log(Level.WARNING, "Could not process the webhook events of " + key, e);
+    }
+  }
+
+  // the snapshot is served as the issue at this updated, so it must hold the real changelog; one
+  // rebuilt from events would hide any transition whose event was dropped from the reconcile poll
+  private JiraService.BasicIssue merge(String key, Pending events) {
+    var issue = new JiraService.BasicIssue(key, events.fields(), jiraService.getChangelog(key));
+    snapshotCache.put(issue);
+    return issue;
+  }
+
+  private boolean hasValidSignature(String signature, byte[] body) {
+    String secret = config.webhookSecret();
+    if (secret == null || secret.isBlank()) {
+      return true;
+    }
+    if (signature == null || !signature.startsWith("sha256=")) {
+      return false;
+    }
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+      return MessageDigest.isEqual(
+          HexFormat.of().formatHex(mac.doFinal(body)).getBytes(StandardCharsets.US_ASCII),
+          signature.substring("sha256=".length()).getBytes(StandardCharsets.US_ASCII));
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException("Could not verify the webhook signature", e);
+    }
+  }
+
+  private record Pending(
+      JiraService.BasicIssueFields fields,
+      boolean bookable,
+      long firstEventAt,
+      ScheduledFuture<?> timer) {
+
+    Pending with(JiraService.BasicIssueFields receivedFields, boolean receivedBookable) {
+      // Jira does not guarantee delivery order, the fields of the latest update win
+      boolean newer =
+          fields.updated() == null
+              || (receivedFields.updated() != null
+                  && !JiraTimestamp.parse(receivedFields.updated())
+                      .isBefore(JiraTimestamp.parse(fields.updated())));
+      return newer ? new Pending(receivedFields, receivedBookable, firstEventAt, timer) : this;
+    }
+
+    Pending withTimer(ScheduledFuture<?> timer) {
+      return new Pending(fields, bookable, firstEventAt, timer);
+    }
+  }
+
+  public record Stats(
+      boolean running, long received, long ignored, int pending, long delivered, long failed) {}
+}
@@ -0,0 +1,244 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Learns project and task mappings from the corrections made during interactive syncs. Every
+ * correction is appended to a JSON lines file, where the last line for an issue wins, and all of
+ * them are compiled into an index keyed on Jira project key and labels. Within a key the summary
+ * tokens break ties between targets, and a decision is confident once it has enough support, a
+ * large enough share of the votes and at least one summary token seen in its own corrections. The
+ * project key and labels alone are shared by every issue of a project and prove nothing.
+ */
+@Service
+public class MappingRuleStore {
+
+  private static final Logger LOG = Logger.getLogger(MappingRuleStore.class.getName());
+  private static final String RULES_FILE = "mapping-rules.jsonl";
+  private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private final ObjectMapper objectMapper;
+  private final Path rulesFile;
+  private final int minSupport;
+  private final double minConfidence;
+  private final Map<String, Correction> corrections = new LinkedHashMap<>();
+  private boolean loaded;
+  private volatile Map<String, Map<Target, Votes>> index;
+
+  @Autowired
+  public MappingRuleStore(ObjectMapper objectMapper, JiraHarvestSyncConfig config) {
+    this(
+        objectMapper,
+        Path.of(config.stateDir()).resolve(RULES_FILE),
+        config.mappingRuleMinSupport(),
+        config.mappingRuleMinConfidence());
+  }
+
+  /** A {@code null} rules file keeps the corrections in memory only. */
+  public MappingRuleStore(
+      ObjectMapper objectMapper, Path rulesFile, int minSupport, double minConfidence) {
+    this.objectMapper = objectMapper;
+    this.rulesFile = rulesFile;
+    this.minSupport = minSupport;
+    this.minConfidence = minConfidence;
+  }
+
+  public Optional<Decision> decide(JiraService.BasicIssue issue) {
+    var targets = index().get(ruleKey(projectKeyOf(issue.key()), labelsOf(issue)));
+    if (targets == null) {
+      return Optional.empty();
+    }
+    List<String> tokens = tokensOf(issue.fields().summary());
+    Map<Target, Double> scores = new HashMap<>();
+    double total = 0;
+    for (var target : targets.entrySet()) {
+      double score = target.getValue().issues;
+      for (String token : tokens) {
+        score += target.getValue().tokens.getOrDefault(token, 0);
+      }
+      scores.put(target.getKey(), score);
+      total += score;
+    }
+    var best = scores.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow();
+    var votes = targets.get(best.getKey());
+    int support = votes.issues;
+    double confidence = best.getValue() / total;
+    boolean tokenEvidence = tokens.stream().anyMatch(votes.tokens::containsKey);
+    return Optional.of(
+        new Decision(
+            best.getKey().projectId(),
+            best.getKey().taskId(),
+            support,
+            confidence,
+            support >= minSupport && confidence >= minConfidence && tokenEvidence));
+  }
+
+  public synchronized void record(JiraService.BasicIssue issue, Long projectId, Long taskId) {
+    load();
+    var correction =
+        new Correction(
+            issue.key(),
+            projectKeyOf(issue.key()),
+            labelsOf(issue),
+            tokensOf(issue.fields().summary()),
+            projectId,
+            taskId,
+            Instant.now());
+    if (rulesFile != null) {
+      try {
+        Files.createDirectories(rulesFile.toAbsolutePath().getParent());
+        Files.writeString(
+            rulesFile,
+            objectMapper.writeValueAsString(correction) + "\n",
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not write mapping rules " + rulesFile, e);
+      }
+    }
+    corrections.put(correction.issueKey(), correction);
+    index = compile(corrections.values());
+  }
+
+  public List<Rule> rules() {
+    return index().entrySet().stream()
+        .flatMap(
+            key ->
+                key.getValue().entrySet().stream()
+                    .map(
+                        target ->
+                            new Rule(
+                                key.getKey(),
+                                target.getKey().projectId(),
+                                target.getKey().taskId(),
+                                target.getValue().issues)))
+        .sorted(
+            Comparator.comparing(Rule::key).thenComparing(Rule::support, Comparator.reverseOrder()))
+        .toList();
+  }
+
+  private Map<String, Map<Target, Votes>> index() {
+    var current = index;
+    if (current == null) {
+      synchronized (this) {
+        load();
+        if (index == null) {
+          index = compile(corrections.values());
+        }
+        current = index;
+      }
+    }
+    return current;
+  }
+
+  private static Map<String, Map<Target, Votes>> compile(Iterable<Correction> corrections) {
+    Map<String, Map<Target, Votes>> compiled = new HashMap<>();
+    for (var correction : corrections) {
+      var votes =
+          compiled
+              .computeIfAbsent(
+                  ruleKey(correction.projectKey(), correction.labels()), key -> new HashMap<>())
+              .computeIfAbsent(
+                  new Target(correction.projectId(), correction.taskId()), target -> new Votes());
+      votes.issues++;
+      for (String token : correction.tokens()) {
+        votes.tokens.merge(token, 1, Integer::sum);
+      }
+    }
+    return compiled;
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    if (rulesFile != null && Files.exists(rulesFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(rulesFile, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isBlank()) {
+            continue;
+          }
+          try {
+            var correction = objectMapper.readValue(line, Correction.class);
+            corrections.put(correction.issueKey(), correction);
+          } catch (IOException e) {
+            LOG.warning("Skipping unreadable mapping rule line in " + rulesFile);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read mapping rules " + rulesFile, e);
+      }
+    }
+    loaded = true;
+  }
+
+  private static String ruleKey(String projectKey, List<String> labels) {
+    return projectKey + " " + String.join(",", labels);
+  }
+
+  private static String projectKeyOf(String issueKey) {
+    int dash = issueKey.lastIndexOf('-');
+    return dash > 0 ? issueKey.substring(0, dash) : issueKey;
+  }
+
+  private static List<String> labelsOf(JiraService.BasicIssue issue) {
+    var labels = issue.fields().labels();
+    return labels == null ? List.of() : labels.stream().sorted().distinct().toList();
+  }
+
+  private static List<String> tokensOf(String summary) {
+    if (summary == null) {
+      return List.of();
+    }
+    return Arrays.stream(TOKEN_SEPARATOR.split(summary.toLowerCase(Locale.ROOT)))
+        .filter(token -> token.length() > 2 && !token.chars().allMatch(Character::isDigit))
+        .distinct()
+        .toList();
+  }
+
+  /** One learned mapping; {@code confident} decisions are applied without asking. */
+  public record Decision(
+      Long projectId, Long taskId, int support, double confidence, boolean confident) {}
+
+  public record Rule(String key, Long projectId, Long taskId, int support) {}
+
+  public record Correction(
+      String issueKey,
+      String projectKey,
+      List<String> labels,
+      List<String> tokens,
+      Long projectId,
+      Long taskId,
+      Instant recordedAt) {}
+
+  private record Target(Long projectId, Long taskId) {}
+
+  // only mutated while compiling, the published index is read-only
+  private static final class Votes {
+    private int issues;
+    private final Map<String, Integer> tokens = new HashMap<>();
+  }
+}
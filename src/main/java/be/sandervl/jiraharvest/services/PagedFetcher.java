@@ -0,0 +1,123 @@
+package be.sandervl.jiraharvest.services;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily walks a paginated endpoint. The first page is fetched on demand, after which at most
+ * {@code prefetch} following pages are downloading in the background while the caller consumes
+ * the current one. Any page may raise the page count, so an endpoint that only links to its next
+ * page is followed one page at a time.
+ */
+public final class PagedFetcher {
+
+  private PagedFetcher() {}
+
+  public static <T> Stream<T> stream(
+      Executor executor, int prefetch, IntFunction<Page<T>> fetchPage) {
+    var iterator = new PrefetchingIterator<>(executor, Math.max(1, prefetch), fetchPage);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(iterator::cancel);
+  }
+
+  public static int pageCount(int total, int pageSize) {
+    return pageSize <= 0 ? 1 : Math.max(1, (total + pageSize - 1) / pageSize);
+  }
+
+  public record Page<T>(List<T> items, int totalPages) {}
+
+  private static final class PrefetchingIterator<T> implements Iterator<T> {
+
+    private final Executor executor;
+    private final int prefetch;
+    private final IntFunction<Page<T>> fetchPage;
+    private final Deque<CompletableFuture<Page<T>>> inFlight = new ArrayDeque<>();
+    private Iterator<T> current = Collections.emptyIterator();
+    private int totalPages = -1;
+    private int nextPageToSchedule = 1;
+
+    private PrefetchingIterator(Executor executor, int prefetch, IntFunction<Page<T>> fetchPage) {
+      this.executor = executor;
+      this.prefetch = prefetch;
+      this.fetchPage = fetchPage;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (!advance()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    private boolean advance() {
+      Page<T> page;
+      if (totalPages < 0) {
+        page = fetchPage.apply(0);
+        totalPages = page == null ? 0 : page.totalPages();
+      } else if (inFlight.isEmpty()) {
+        return false;
+      } else {
+        page = join(inFlight.poll());
+      }
+      if (page == null || page.items() == null || page.items().isEmpty()) {
+        cancel();
+        return false;
+      }
+      totalPages = Math.max(totalPages, page.totalPages());
+      schedule();
+      current = page.items().iterator();
+      return true;
+    }
+
+    private void schedule() {
+      while (inFlight.size() < prefetch && nextPageToSchedule < totalPages) {
+        int pageIndex = nextPageToSchedule++;
+        inFlight.add(CompletableFuture.supplyAsync(() -> fetchPage.apply(pageIndex), executor));
+      }
+    }
+
+    private Page<T> join(CompletableFuture<Page<T>> future) {
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        cancel();
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+
+    private void cancel() {
+      inFlight.forEach(future -> future.cancel(true));
+      inFlight.clear();
+      nextPageToSchedule = Math.max(nextPageToSchedule, totalPages);
+    }
+  }
+}
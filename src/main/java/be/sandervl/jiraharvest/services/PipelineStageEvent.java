@@ -0,0 +1,19 @@
+package be.sandervl.jiraharvest.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("be.sandervl.jiraharvest.PipelineStage")
+@Label("Pipeline Stage")
+@Category({"Jira Harvest", "Sync"})
+@StackTrace(false)
+class PipelineStageEvent extends jdk.jfr.Event {
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Issue Key")
+  String issueKey;
+}
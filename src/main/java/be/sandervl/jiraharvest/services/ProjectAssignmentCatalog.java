@@ -0,0 +1,152 @@
+package be.sandervl.jiraharvest.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable lookup structures over the project assignments of the current user, built once per
+ * fetch. Selector item maps are keyed by display name; names that occur more than once get their id
+ * appended so every entry stays selectable.
+ */
+public final class ProjectAssignmentCatalog {
+
+  private final List<HarvestService.ProjectAssignment> assignments;
+  private final Map<Long, HarvestService.ProjectAssignment> projectsById;
+  private final Map<Long, HarvestService.Client> clientsById;
+  private final Map<Long, HarvestService.Task> tasksById;
+  private final Map<Long, Map<Long, HarvestService.TaskAssignment>> taskAssignmentsByProjectId;
+  private final Map<String, String> clientItems;
+  private final Map<Long, Map<String, String>> projectItemsByClientId;
+  private final Map<Long, Map<String, String>> taskItemsByProjectId;
+  private final ClientNameIndex clientNameIndex;
+
+  private ProjectAssignmentCatalog(List<HarvestService.ProjectAssignment> assignments) {
+    this.assignments = assignments;
+    Map<Long, HarvestService.ProjectAssignment> projects = new HashMap<>();
+    Map<Long, HarvestService.Client> clients = new HashMap<>();
+    Map<Long, HarvestService.Task> tasks = new HashMap<>();
+    Map<Long, Map<Long, HarvestService.TaskAssignment>> taskAssignments = new HashMap<>();
+    for (var assignment : assignments) {
+      projects.putIfAbsent(assignment.project().id(), assignment);
+      clients.putIfAbsent(assignment.client().id(), assignment.client());
+      var projectTasks =
+          taskAssignments.computeIfAbsent(assignment.project().id(), id -> new LinkedHashMap<>());
+      for (var taskAssignment : assignment.taskAssignments()) {
+        tasks.putIfAbsent(taskAssignment.task().id(), taskAssignment.task());
+        projectTasks.putIfAbsent(taskAssignment.task().id(), taskAssignment);
+      }
+    }
+    this.projectsById = Map.copyOf(projects);
+    this.clientsById = Map.copyOf(clients);
+    this.tasksById = Map.copyOf(tasks);
+    this.taskAssignmentsByProjectId =
+        taskAssignments.entrySet().stream()
+            .collect(
+                Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> Map.copyOf(e.getValue())));
+
+    this.clientItems =
+        selectorItems(clients.values(), HarvestService.Client::name, HarvestService.Client::id);
+    this.projectItemsByClientId =
+        assignments.stream()
+            .collect(Collectors.groupingBy(assignment -> assignment.client().id()))
+            .entrySet()
+            .stream()
+            .collect(
+                Collectors.toUnmodifiableMap(
+                    Map.Entry::getKey,
+                    e ->
+                        selectorItems(
+                            e.getValue().stream()
+                                .map(HarvestService.ProjectAssignment::project)
+                                .distinct()
+                                .toList(),
+                            HarvestService.Project::name,
+                            HarvestService.Project::id)));
+    this.taskItemsByProjectId =
+        taskAssignments.entrySet().stream()
+            .collect(
+                Collectors.toUnmodifiableMap(
+                    Map.Entry::getKey,
+                    e ->
+                        selectorItems(
+                            e.getValue().values().stream()
+                                .map(HarvestService.TaskAssignment::task)
+                                .toList(),
+                            HarvestService.Task::name,
+                            HarvestService.Task::id)));
+    this.clientNameIndex = ClientNameIndex.of(assignments);
+  }
+
+  public static ProjectAssignmentCatalog of(
+      Iterable<HarvestService.ProjectAssignment> assignments) {
+    List<HarvestService.ProjectAssignment> list =
+        assignments instanceof Collection<HarvestService.ProjectAssignment> collection
+            ? List.copyOf(collection)
+            : StreamSupport.stream(assignments.spliterator(), false).toList();
+    return new ProjectAssignmentCatalog(list);
+  }
+
+  public List<HarvestService.ProjectAssignment> assignments() {
+    return assignments;
+  }
+
+  public Optional<HarvestService.ProjectAssignment> project(Long projectId) {
+    return Optional.ofNullable(projectsById.get(projectId));
+  }
+
+  public Optional<HarvestService.Client> client(Long clientId) {
+    return Optional.ofNullable(clientsById.get(clientId));
+  }
+
+  public Optional<HarvestService.Task> task(Long taskId) {
+    return Optional.ofNullable(tasksById.get(taskId));
+  }
+
+  public Optional<HarvestService.TaskAssignment> taskAssignment(Long projectId, Long taskId) {
+    return Optional.ofNullable(
+        taskAssignmentsByProjectId.getOrDefault(projectId, Map.of()).get(taskId));
+  }
+
+  public Map<String, String> clientItems() {
+    return clientItems;
+  }
+
+  public Map<String, String> projectItems(Long clientId) {
+    return projectItemsByClientId.getOrDefault(clientId, Map.of());
+  }
+
+  public Map<String, String> taskItems(Long projectId) {
+    return taskItemsByProjectId.getOrDefault(projectId, Map.of());
+  }
+
+  public ClientNameIndex clientNameIndex() {
+    return clientNameIndex;
+  }
+
+  private static <T> Map<String, String> selectorItems(
+      Collection<T> values, Function<T, String> name, Function<T, Long> id) {
+    Map<String, Long> nameCounts =
+        values.stream().collect(Collectors.groupingBy(name, Collectors.counting()));
+    Map<String, String> items = new LinkedHashMap<>();
+    values.stream()
+        .sorted(Comparator.comparing(name).thenComparing(id))
+        .forEach(
+            value -> {
+              String label = name.apply(value);
+              if (nameCounts.get(label) > 1) {
+                label = label + " (" + id.apply(value) + ")";
+              }
+              items.put(label, String.valueOf(id.apply(value)));
+            });
+    return Collections.unmodifiableMap(items);
+  }
+}
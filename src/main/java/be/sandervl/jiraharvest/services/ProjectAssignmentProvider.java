@@ -0,0 +1,78 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import org.springframework.stereotype.Service;
+
+/**
+ * Loads the project assignments on first use and keeps them for a while. Once the copy is older
+ * than the configured ttl it is refreshed in the background while callers keep getting the stale
+ * one.
+ */
+@Service
+public class ProjectAssignmentProvider {
+
+  private final HarvestService harvestService;
+  private final ExecutorService executor;
+  private final long ttlNanos;
+  private volatile Loaded loaded;
+  private CompletableFuture<Void> refreshing;
+
+  public ProjectAssignmentProvider(
+      HarvestService harvestService,
+      JiraHarvestSyncConfig config,
+      ExecutorService remoteCallExecutor) {
+    this.harvestService = harvestService;
+    this.executor = remoteCallExecutor;
+    this.ttlNanos = Duration.ofMinutes(config.projectAssignmentsTtlMinutes()).toNanos();
+  }
+
+  public ProjectAssignmentCatalog get() {
+    var current = loaded;
+    if (current == null) {
+      return loadNow();
+    }
+    if (System.nanoTime() - current.loadedAt() > ttlNanos) {
+      refreshInBackground();
+    }
+    return current.catalog();
+  }
+
+  public void invalidate() {
+    loaded = null;
+  }
+
+  private synchronized ProjectAssignmentCatalog loadNow() {
+    var current = loaded;
+    if (current == null) {
+      current = load();
+      loaded = current;
+    }
+    return current.catalog();
+  }
+
+  private synchronized void refreshInBackground() {
+    if (refreshing != null && !refreshing.isDone()) {
+      return;
+    }
+    refreshing =
+        CompletableFuture.runAsync(
+            () -> {
+              // a failed refresh keeps serving the stale copy and is retried on the next get
+              try {
+                loaded = load();
+              } catch (RuntimeException ignored) {
+              }
+            },
+            executor);
+  }
+
+  private Loaded load() {
+    return new Loaded(
+        ProjectAssignmentCatalog.of(harvestService.getProjectAssignments()), System.nanoTime());
+  }
+
+  private record Loaded(ProjectAssignmentCatalog catalog, long loadedAt) {}
+}
@@ -0,0 +1,30 @@
+package be.sandervl.jiraharvest.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("be.sandervl.jiraharvest.RemoteCall")
+@Label("Remote Call")
+@Category({"Jira Harvest", "HTTP"})
+@StackTrace(false)
+class RemoteCallEvent extends jdk.jfr.Event {
+
+  @Label("Host")
+  String host;
+
+  @Label("Method")
+  String method;
+
+  @Label("Endpoint")
+  String endpoint;
+
+  @Label("Status")
+  int status;
+
+  @Label("Bytes Received")
+  @DataAmount
+  long bytes;
+}
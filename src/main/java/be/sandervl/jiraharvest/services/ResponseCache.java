@@ -0,0 +1,111 @@
+package be.sandervl.jiraharvest.services;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import org.springframework.stereotype.Service;
+
+/**
+ * Session wide cache of remote responses. Concurrent callers asking for the same key while it is
+ * being loaded wait for that one request instead of sending their own.
+ */
+@Service
+public class ResponseCache {
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, Duration ttl, Supplier<T> loader) {
+    while (true) {
+      long now = System.nanoTime();
+      var entry = entries.get(key);
+      if (entry != null && (!entry.value().isDone() || entry.expiresAt() - now > 0)) {
+        hits.incrementAndGet();
+        try {
+          return (T) entry.value().join();
+        } catch (CompletionException e) {
+          // the loading caller removes a failed entry and rethrows, just try again
+          continue;
+        }
+      }
+      var loading = new Entry(new CompletableFuture<>(), now, now + ttl.toNanos());
+      if (entry == null
+          ? entries.putIfAbsent(key, loading) != null
+          : !entries.replace(key, entry, loading)) {
+        continue;
+      }
+      misses.incrementAndGet();
+      try {
+        T value = loader.get();
+        loading.value().complete(value);
+        return value;
+      } catch (RuntimeException e) {
+        entries.remove(key, loading);
+        loading.value().completeExceptionally(e);
+        throw e;
+      }
+    }
+  }
+
+  /** Applies a local write to a cached value, so the next read sees it without a refetch. */
+  @SuppressWarnings("unchecked")
+  public <T> void update(String keyPrefix, UnaryOperator<T> update) {
+    // a response still in flight may predate the write, drop it instead
+    entries
+        .entrySet()
+        .removeIf(e -> e.getKey().startsWith(keyPrefix) && !e.getValue().value().isDone());
+    entries.replaceAll(
+        (key, entry) -> {
+          if (!key.startsWith(keyPrefix) || !entry.value().isDone()) {
+            return entry;
+          }
+          if (entry.value().isCompletedExceptionally()) {
+            return entry;
+          }
+          return new Entry(
+              CompletableFuture.completedFuture(update.apply((T) entry.value().join())),
+              entry.loadedAt(),
+              entry.expiresAt());
+        });
+  }
+
+  public void invalidate(String keyPrefix) {
+    entries.keySet().removeIf(key -> key.startsWith(keyPrefix));
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  public Stats stats() {
+    long now = System.nanoTime();
+    return new Stats(
+        hits.get(),
+        misses.get(),
+        entries.entrySet().stream()
+            .map(
+                e ->
+                    new EntryStats(
+                        e.getKey(),
+                        !e.getValue().value().isDone(),
+                        Duration.ofNanos(now - e.getValue().loadedAt()),
+                        Duration.ofNanos(Math.max(0, e.getValue().expiresAt() - now))))
+            .sorted(Comparator.comparing(EntryStats::key))
+            .toList());
+  }
+
+  private record Entry(CompletableFuture<Object> value, long loadedAt, long expiresAt) {}
+
+  public record Stats(long hits, long misses, List<EntryStats> entries) {}
+
+  public record EntryStats(String key, boolean loading, Duration age, Duration expiresIn) {}
+}
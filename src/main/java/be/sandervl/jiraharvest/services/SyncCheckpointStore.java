@@ -0,0 +1,193 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Service;
+
+@Service
+public class SyncCheckpointStore {
+
+  private static final String CHECKPOINT_FILE = "checkpoint.json";
+
+  private final ObjectMapper objectMapper;
+  private final Path checkpointFile;
+  private final Duration overlap;
+  private final Duration window;
+
+  public SyncCheckpointStore(ObjectMapper objectMapper, JiraHarvestSyncConfig config) {
+    this.objectMapper = objectMapper;
+    this.checkpointFile = Path.of(config.stateDir()).resolve(CHECKPOINT_FILE);
+    this.overlap = Duration.ofMinutes(config.checkpointOverlapMinutes());
+    this.window = Duration.ofDays(config.daysToGoBack());
+  }
+
+  public synchronized SyncCheckpoint load() {
+    if (!Files.exists(checkpointFile)) {
+      return SyncCheckpoint.EMPTY;
+    }
+    try {
+      return objectMapper.readValue(checkpointFile.toFile(), SyncCheckpoint.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read sync checkpoint " + checkpointFile, e);
+    }
+  }
+
+  public synchronized void save(SyncCheckpoint checkpoint) {
+    try {
+      Files.createDirectories(checkpointFile.getParent());
+      Path tempFile = Files.createTempFile(checkpointFile.getParent(), CHECKPOINT_FILE, ".tmp");
+      objectMapper.writeValue(tempFile.toFile(), checkpoint);
+      Files.move(
+          tempFile,
+          checkpointFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write sync checkpoint " + checkpointFile, e);
+    }
+  }
+
+  public Duration overlap() {
+    return overlap;
+  }
+
+  public Run startRun(SyncCheckpoint checkpoint) {
+    return new Run(checkpoint, Instant.now());
+  }
+
+  /**
+   * The high-water mark, the issues handled since shortly before it and the issues left for a
+   * review. Issues left for a review do not hold the high-water mark back, a {@code start} offers
+   * them again by key until they are handled or leave the window.
+   */
+  public record SyncCheckpoint(
+      Instant highWaterUpdated,
+      Map<String, Instant> handledIssues,
+      Map<String, Instant> pendingReview) {
+
+    public static final SyncCheckpoint EMPTY = new SyncCheckpoint(null, Map.of(), Map.of());
+
+    public boolean isHandled(String issueKey, Instant updated) {
+      return handledIssues != null
+          && updated != null
+          && updated.equals(handledIssues.get(issueKey));
+    }
+
+    public boolean isPendingReview(String issueKey, Instant updated) {
+      return pendingReview != null
+          && updated != null
+          && updated.equals(pendingReview.get(issueKey));
+    }
+
+    public Set<String> pendingReviewKeys() {
+      return pendingReview != null ? pendingReview.keySet() : Set.of();
+    }
+  }
+
+  /**
+   * Tracks the issues of one sync run. The high-water mark only moves up to the query time when
+   * every issue was handled or left for a review, otherwise it stops at the oldest failed issue so
+   * it is retried. A run that did not complete keeps the previous high-water mark, since it never
+   * saw the issues after the one it stopped at.
+   */
+  public class Run {
+
+    private final SyncCheckpoint previous;
+    private final Instant queriedAt;
+    private final Map<String, Instant> handled = new HashMap<>();
+    private final Map<String, Instant> pendingReview = new HashMap<>();
+    private Instant oldestFailure;
+    private Instant searchedAt;
+
+    private Run(SyncCheckpoint previous, Instant queriedAt) {
+      this.previous = previous;
+      this.queriedAt = queriedAt;
+      if (previous.handledIssues() != null) {
+        handled.putAll(previous.handledIssues());
+      }
+      if (previous.pendingReview() != null) {
+        pendingReview.putAll(previous.pendingReview());
+      }
+    }
+
+    public Instant since(Instant windowStart) {
+      if (previous.highWaterUpdated() == null) {
+        return windowStart;
+      }
+      Instant checkpoint = previous.highWaterUpdated().minus(overlap);
+      return checkpoint.isAfter(windowStart) ? checkpoint : windowStart;
+    }
+
+    public boolean isHandled(String issueKey, Instant updated) {
+      return previous.isHandled(issueKey, updated);
+    }
+
+    /** The issues an earlier run left for a review. */
+    public Set<String> pendingReviewKeys() {
+      return previous.pendingReviewKeys();
+    }
+
+    public synchronized void handled(String issueKey, Instant updated) {
+      pendingReview.remove(issueKey);
+      if (updated != null) {
+        handled.put(issueKey, updated);
+      }
+    }
+
+    public synchronized void needsReview(String issueKey, Instant updated) {
+      if (updated != null) {
+        pendingReview.put(issueKey, updated);
+      }
+    }
+
+    public synchronized void failed(Instant updated) {
+      if (updated != null && (oldestFailure == null || updated.isBefore(oldestFailure))) {
+        oldestFailure = updated;
+      }
+    }
+
+    /** When the search behind this run ran, which is before the run for a cached search. */
+    public synchronized void searchedAt(Instant at) {
+      if (searchedAt == null || at.isBefore(searchedAt)) {
+        searchedAt = at;
+      }
+    }
+
+    public synchronized SyncCheckpoint commit() {
+      Instant highWater = oldestFailure != null ? oldestFailure : queriedAt;
+      return persist(searchedAt != null && searchedAt.isBefore(highWater) ? searchedAt : highWater);
+    }
+
+    /** Keeps the issues handled so far without moving the high-water mark. */
+    public synchronized SyncCheckpoint abort() {
+      return persist(previous.highWaterUpdated());
+    }
+
+    private SyncCheckpoint persist(Instant highWater) {
+      Instant keepFrom = highWater != null ? highWater.minus(overlap) : Instant.MIN;
+      Instant windowStart = Instant.now().minus(window);
+      var checkpoint =
+          new SyncCheckpoint(
+              highWater, updatedSince(handled, keepFrom), updatedSince(pendingReview, windowStart));
+      save(checkpoint);
+      return checkpoint;
+    }
+
+    private static Map<String, Instant> updatedSince(Map<String, Instant> issues, Instant from) {
+      return issues.entrySet().stream()
+          .filter(entry -> !entry.getValue().isBefore(from))
+          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+  }
+}
@@ -0,0 +1,414 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps one process running that polls Jira for the delta since the checkpoint and submits every
+ * issue that resolves without questions. Polls are faster during working hours and back off while
+ * nothing changes; issues that need a review are left for an interactive {@code start}. A small
+ * loopback HTTP server answers {@code /health} and {@code /status}. With the {@link
+ * JiraWebhookReceiver} enabled, issues arrive through webhooks and the poll becomes a low-frequency
+ * reconcile.
+ */
+@Service
+public class SyncDaemon implements DisposableBean {
+
+  private static final Logger LOG = Logger.getLogger(SyncDaemon.class.getName());
+
+  private final JiraService jiraService;
+  private final HarvestService harvestService;
+  private final SyncCheckpointStore checkpointStore;
+  private final TimeEntryLedger timeEntryLedger;
+  private final IssueResolver issueResolver;
+  private final ProjectAssignmentProvider projectAssignmentProvider;
+  private final HarvestWriteQueue writeQueue;
+  private final WorkCalendar calendar;
+  private final JiraWebhookReceiver webhookReceiver;
+  private final SyncMetrics metrics;
+  private final ObjectMapper objectMapper;
+  private final SyncLock syncLock;
+  private final JiraHarvestSyncConfig config;
+
+  // review issues already reported, so a poll that only sees them again counts as idle
+  private final Map<String, Instant> reportedForReview = new HashMap<>();
+  private ScheduledExecutorService scheduler;
+  private HttpServer statusServer;
+  private CountDownLatch stopped = new CountDownLatch(0);
+  private volatile Instant startedAt;
+  private volatile Instant nextPollAt;
+  private volatile Duration interval;
+  private volatile int idlePolls;
+  private volatile long polls;
+  private volatile long failedPolls;
+  private volatile PollResult lastPoll;
+  private volatile ZoneId zone = ZoneId.systemDefault();
+
+  public SyncDaemon(
+      JiraService jiraService,
+      HarvestService harvestService,
+      SyncCheckpointStore checkpointStore,
+      TimeEntryLedger timeEntryLedger,
+      IssueResolver issueResolver,
+      ProjectAssignmentProvider projectAssignmentProvider,
+      HarvestWriteQueue writeQueue,
+      WorkCalendar calendar,
+      JiraWebhookReceiver webhookReceiver,
+      SyncMetrics metrics,
+      ObjectMapper objectMapper,
+      SyncLock syncLock,
+      JiraHarvestSyncConfig config) {
+    this.jiraService = jiraService;
+    this.harvestService = harvestService;
+    this.checkpointStore = checkpointStore;
+    this.timeEntryLedger = timeEntryLedger;
+    this.issueResolver = issueResolver;
+    this.projectAssignmentProvider = projectAssignmentProvider;
+    this.writeQueue = writeQueue;
+    this.calendar = calendar;
+    this.webhookReceiver = webhookReceiver;
+    this.metrics = metrics;
+    this.objectMapper = objectMapper;
+    this.syncLock = syncLock;
+    this.config = config;
+  }
+
+  public synchronized boolean start() {
+    if (isRunning()) {
+      return false;
+    }
+    startedAt = Instant.now();
+    stopped = new CountDownLatch(1);
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "sync-daemon");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      if (config.daemonStatusPort() > 0) {
+        statusServer = startStatusServer(config.daemonStatusPort());
+      }
+      if (config.webhookPort() > 0) {
+        webhookReceiver.start(this::onWebhookIssue);
+      }
+    } catch (RuntimeException e) {
+      // a port in use must not leave a scheduler behind that reports the daemon as running
+      stop();
+      throw e;
+    }
+    schedule(Duration.ZERO);
+    return true;
+  }
+
+  public synchronized void stop() {
+    if (!isRunning()) {
+      return;
+    }
+    webhookReceiver.stop();
+    scheduler.shutdownNow();
+    if (statusServer != null) {
+      statusServer.stop(0);
+      statusServer = null;
+    }
+    nextPollAt = null;
+    stopped.countDown();
+  }
+
+  public boolean isRunning() {
+    return scheduler != null && !scheduler.isShutdown();
+  }
+
+  public void awaitStop() throws InterruptedException {
+    stopped.await();
+  }
+
+  @Override
+  public void destroy() {
+    stop();
+  }
+
+  public Status status() {
+    return new Status(
+        isRunning(),
+        startedAt,
+        statusServer != null ? statusServer.getAddress().getPort() : null,
+        polls,
+        failedPolls,
+        idlePolls,
+        interval,
+        nextPollAt,
+        lastPoll,
+        webhookReceiver.stats());
+  }
+
+  private void schedule(Duration delay) {
+    interval = delay;
+    nextPollAt = Instant.now().plus(delay);
+    scheduler.schedule(this::pollAndReschedule, delay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void pollAndReschedule() {
+    PollResult result;
+    try {
+      // waits for a start, apply or team-sync in the same shell to finish
+      result = syncLock.run(this::poll);
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Sync daemon poll failed", e);
+      failedPolls++;
+      result = new PollResult(Instant.now(), Instant.now(), 0, 0, 0, 0, e.getMessage());
+    }
+    polls++;
+    lastPoll = result;
+    idlePolls = result.changed() ? 0 : idlePolls + 1;
+    synchronized (this) {
+      if (isRunning()) {
+        schedule(nextInterval());
+      }
+    }
+  }
+
+  private PollResult poll() {
+    Instant pollStarted = Instant.now();
+    var run = checkpointStore.startRun(checkpointStore.load());
+    timeEntryLedger.ensureReconciled();
+    var currentUser = jiraService.getCurrentUser();
+    zone = calendar.zoneOf(currentUser);
+    var catalog = projectAssignmentProvider.get();
+    // keeps the recent time entries warm for the list commands between polls
+    try (var timeEntries = harvestService.streamTimeEntries()) {
+      timeEntries.count();
+    }
+
+    int issues = 0;
+    int needsReview = 0;
+    List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+    try {
+      for (var issue : jiraService.getIssuesUpdatedSince(currentUser, run, Set.of())) {
+        var updated = JiraIssueParser.getUpdated(issue);
+        if (run.isHandled(issue.key(), updated)) {
+          continue;
+        }
+        if (timeEntryLedger.contains(issue.key())) {
+          run.handled(issue.key(), updated);
+          metrics.issue("already-synced");
+          continue;
+        }
+        metrics.issue("processed");
+        issues++;
+        var submitted = submitIfResolvable(issue, catalog, currentUser);
+        if (submitted == null) {
+          // the next interactive start offers it again
+          run.needsReview(issue.key(), updated);
+          if (!Objects.equals(updated, reportedForReview.put(issue.key(), updated))) {
+            needsReview++;
+          }
+          continue;
+        }
+        pending.add(
+            submitted.thenApply(
+                created -> {
+                  if (created) {
+                    run.handled(issue.key(), updated);
+                  } else {
+                    run.failed(updated);
+                  }
+                  return created;
+                }));
+      }
+    } catch (RuntimeException e) {
+      CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+      // a failed search never reached the later issues, so the high-water mark stays
+      run.abort();
+      throw e;
+    }
+    CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+    var checkpoint = run.commit();
+    reportedForReview
+        .entrySet()
+        .removeIf(reported -> !checkpoint.isPendingReview(reported.getKey(), reported.getValue()));
+    int created = (int) pending.stream().filter(CompletableFuture::join).count();
+    return new PollResult(
+        pollStarted, Instant.now(), issues, created, needsReview, pending.size() - created, null);
+  }
+
+  /** Submits an issue that resolves without questions, {@code null} when it needs a review. */
+  private CompletableFuture<Boolean> submitIfResolvable(
+      JiraService.BasicIssue issue,
+      ProjectAssignmentCatalog catalog,
+      JiraService.JiraUser currentUser) {
+    var resolution = issueResolver.resolve(issue, catalog, currentUser);
+    if (!issueResolver.isUnambiguous(resolution, catalog)) {
+      metrics.issue("skipped");
+      return null;
+    }
+    return writeQueue
+        .submit(
+            resolution.projectAssignment().project().id(),
+            resolution.taskAssignment().task().id(),
+            resolution.spentDate(),
+            resolution.hours(),
+            issue.key(),
+            jiraService.externalReference(issue.key()))
+        .handle(
+            (created, e) -> {
+              if (e != null) {
+                LOG.log(Level.WARNING, "Could not create entry for " + issue.key(), e);
+                metrics.issue("failed");
+                return false;
+              }
+              timeEntryLedger.record(issue.key(), created);
+              metrics.issue("created");
+              return true;
+            });
+  }
+
+  // runs on the scheduler thread, so webhook issues never race a poll
+  private void onWebhookIssue(JiraService.BasicIssue issue) {
+    scheduler.execute(
+        () -> {
+          try {
+            syncLock.run(() -> syncWebhookIssue(issue));
+          } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not sync webhook issue " + issue.key(), e);
+          }
+        });
+  }
+
+  private void syncWebhookIssue(JiraService.BasicIssue issue) {
+    var currentUser = jiraService.getCurrentUser();
+    if (!jiraService.isWorkedOnBy(currentUser, issue)) {
+      return;
+    }
+    if (timeEntryLedger.contains(issue.key())) {
+      metrics.issue("already-synced");
+      return;
+    }
+    metrics.issue("processed");
+    var submitted = submitIfResolvable(issue, projectAssignmentProvider.get(), currentUser);
+    if (submitted == null) {
+      reportedForReview.put(issue.key(), JiraIssueParser.getUpdated(issue));
+      return;
+    }
+    submitted.join();
+  }
+
+  private Duration nextInterval() {
+    // with webhooks the poll only reconciles missed events
+    if (webhookReceiver.isRunning()) {
+      return jittered(Duration.ofSeconds(config.webhookReconcileSeconds()));
+    }
+    Duration base =
+        Duration.ofSeconds(
+            calendar.isWorkingTime(Instant.now(), zone)
+                ? config.daemonWorkingHoursPollSeconds()
+                : config.daemonOffHoursPollSeconds());
+    Duration max = Duration.ofSeconds(config.daemonMaxPollSeconds());
+    Duration backedOff = base.multipliedBy(1L << Math.min(idlePolls, 10));
+    return jittered(
+        backedOff.compareTo(max) > 0 ? (base.compareTo(max) > 0 ? base : max) : backedOff);
+  }
+
+  private Duration jittered(Duration next) {
+    double jitter = config.daemonPollJitter();
+    if (jitter <= 0) {
+      return next;
+    }
+    return Duration.ofMillis(
+        Math.round(
+            next.toMillis() * (1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter))));
+  }
+
+  private HttpServer startStatusServer(int port) {
+    try {
+      var server =
+          HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext(
+          "/health",
+          exchange -> {
+            var last = lastPoll;
+            boolean healthy = isRunning() && (last == null || last.error() == null);
+            respond(
+                exchange,
+                healthy ? 200 : 503,
+                "text/plain",
+                healthy ? "ok" : "last poll failed: " + (last == null ? "" : last.error()));
+          });
+      server.createContext(
+          "/status",
+          exchange ->
+              respond(
+                  exchange,
+                  200,
+                  "application/json",
+                  objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(status())));
+      server.start();
+      return server;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not start the daemon status server on port " + port, e);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (var out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  public record PollResult(
+      Instant startedAt,
+      Instant finishedAt,
+      int issues,
+      int created,
+      int needsReview,
+      int failed,
+      String error) {
+
+    boolean changed() {
+      return error == null && (created > 0 || needsReview > 0 || failed > 0);
+    }
+  }
+
+  public record Status(
+      boolean running,
+      Instant startedAt,
+      Integer statusPort,
+      long polls,
+      long failedPolls,
+      int idlePolls,
+      Duration interval,
+      Instant nextPollAt,
+      PollResult lastPoll,
+      JiraWebhookReceiver.Stats webhooks) {}
+}
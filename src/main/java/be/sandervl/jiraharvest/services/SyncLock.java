@@ -0,0 +1,38 @@
+package be.sandervl.jiraharvest.services;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Lets one sync run at a time in this process. start, apply, team-sync and the daemon check the
+ * checkpoint and the ledger before they submit, so two runs at once could overwrite each other's
+ * checkpoint or book the same issue twice.
+ */
+@Service
+public class SyncLock {
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  public <T> T run(Supplier<T> sync) {
+    try {
+      lock.lockInterruptibly();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the running sync", e);
+    }
+    try {
+      return sync.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void run(Runnable sync) {
+    run(
+        () -> {
+          sync.run();
+          return null;
+        });
+  }
+}
@@ -0,0 +1,155 @@
+package be.sandervl.jiraharvest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import org.springframework.stereotype.Service;
+
+/**
+ * Micrometer meters for remote calls and the sync pipeline. Parse and match stages are also
+ * recorded as JFR events, so a recording of a slow sync shows them next to the remote calls.
+ */
+@Service
+public class SyncMetrics {
+
+  private static final Pattern ISSUE_SEGMENT = Pattern.compile("/issue/[^/]+");
+  // long numeric segments are Harvest ids, short ones like the Jira api version are kept
+  private static final Pattern ID_SEGMENT = Pattern.compile("/\\d{3,}(?=/|$)");
+
+  private final MeterRegistry registry;
+
+  public SyncMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  public MeterRegistry registry() {
+    return registry;
+  }
+
+  public <T> T parse(String operation, String issueKey, Supplier<T> work) {
+    return stage("jira.issue.parse", operation, issueKey, work);
+  }
+
+  public <T> T match(String issueKey, Supplier<T> work) {
+    return stage("sync.issue.match", "match", issueKey, work);
+  }
+
+  public void remoteCall(
+      String host, String method, String endpoint, String status, long bytes, long nanos) {
+    Timer.builder("remote.call")
+        .tags("host", host, "method", method, "endpoint", endpoint, "status", status)
+        .publishPercentiles(0.5, 0.99)
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+    DistributionSummary.builder("remote.call.bytes")
+        .baseUnit("bytes")
+        .tags("host", host, "method", method, "endpoint", endpoint)
+        .register(registry)
+        .record(bytes);
+  }
+
+  public void remoteRetry(String endpoint, String reason) {
+    Counter.builder("remote.call.retries")
+        .tags("endpoint", endpoint, "reason", reason)
+        .register(registry)
+        .increment();
+  }
+
+  public void changelogCache(boolean hit) {
+    Counter.builder("jira.changelog.cache")
+        .tag("result", hit ? "hit" : "miss")
+        .register(registry)
+        .increment();
+  }
+
+  public void issue(String outcome) {
+    Counter.builder("sync.issues").tag("outcome", outcome).register(registry).increment();
+  }
+
+  public List<MeterSnapshot> snapshot() {
+    return registry.getMeters().stream()
+        .map(SyncMetrics::snapshotOf)
+        .filter(Objects::nonNull)
+        .sorted(
+            Comparator.comparing(MeterSnapshot::name)
+                .thenComparing(meter -> meter.tags().toString()))
+        .toList();
+  }
+
+  private static MeterSnapshot snapshotOf(Meter meter) {
+    Map<String, String> tags = new TreeMap<>();
+    meter.getId().getTags().forEach(tag -> tags.put(tag.getKey(), tag.getValue()));
+    String name = meter.getId().getName();
+    if (meter instanceof Timer timer) {
+      Map<String, Double> percentiles = new TreeMap<>();
+      for (var percentile : timer.takeSnapshot().percentileValues()) {
+        percentiles.put(
+            "p" + Math.round(percentile.percentile() * 100),
+            percentile.value(TimeUnit.MILLISECONDS));
+      }
+      return new MeterSnapshot(
+          name,
+          tags,
+          "timer",
+          timer.count(),
+          timer.totalTime(TimeUnit.MILLISECONDS),
+          timer.max(TimeUnit.MILLISECONDS),
+          percentiles);
+    }
+    if (meter instanceof DistributionSummary summary) {
+      return new MeterSnapshot(
+          name, tags, "summary", summary.count(), summary.totalAmount(), summary.max(), Map.of());
+    }
+    if (meter instanceof Counter counter) {
+      return new MeterSnapshot(
+          name, tags, "counter", (long) counter.count(), counter.count(), 0, Map.of());
+    }
+    return null;
+  }
+
+  static String endpointOf(String path) {
+    return ID_SEGMENT
+        .matcher(ISSUE_SEGMENT.matcher(path).replaceAll("/issue/{key}"))
+        .replaceAll("/{id}");
+  }
+
+  /** Timer totals and percentiles are in milliseconds, summary totals in their base unit. */
+  public record MeterSnapshot(
+      String name,
+      Map<String, String> tags,
+      String type,
+      long count,
+      double total,
+      double max,
+      Map<String, Double> percentiles) {}
+
+  private <T> T stage(String name, String operation, String issueKey, Supplier<T> work) {
+    var event = new PipelineStageEvent();
+    event.begin();
+    long start = System.nanoTime();
+    try {
+      return work.get();
+    } finally {
+      Timer.builder(name)
+          .tag("operation", operation)
+          .register(registry)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      event.end();
+      if (event.shouldCommit()) {
+        event.stage = operation;
+        event.issueKey = issueKey;
+        event.commit();
+      }
+    }
+  }
+}
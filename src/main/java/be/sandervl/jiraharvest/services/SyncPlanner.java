@@ -0,0 +1,265 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import org.springframework.stereotype.Service;
+
+/**
+ * Splits a sync in two: {@link #plan} fetches the candidate issues once and resolves them in
+ * parallel into a JSON Lines file of proposed entries, {@link #apply} streams that file back and
+ * submits the ready entries through the rate-limited write queue. The plan can be reviewed and
+ * edited in between.
+ */
+@Service
+public class SyncPlanner {
+
+  private static final int RESOLVE_WINDOW_PER_CORE = 4;
+
+  private final JiraService jiraService;
+  private final SyncCheckpointStore checkpointStore;
+  private final TimeEntryLedger timeEntryLedger;
+  private final IssueResolver issueResolver;
+  private final ProjectAssignmentProvider projectAssignmentProvider;
+  private final HarvestWriteQueue writeQueue;
+  private final SyncMetrics metrics;
+  private final ObjectMapper objectMapper;
+  private final SyncLock syncLock;
+  private final ExecutorService resolveExecutor;
+  private final int resolveWindow;
+  private final int applyBatchSize;
+
+  public SyncPlanner(
+      JiraService jiraService,
+      SyncCheckpointStore checkpointStore,
+      TimeEntryLedger timeEntryLedger,
+      IssueResolver issueResolver,
+      ProjectAssignmentProvider projectAssignmentProvider,
+      HarvestWriteQueue writeQueue,
+      SyncMetrics metrics,
+      ObjectMapper objectMapper,
+      SyncLock syncLock,
+      ExecutorService resolveExecutor,
+      JiraHarvestSyncConfig config) {
+    this.jiraService = jiraService;
+    this.checkpointStore = checkpointStore;
+    this.timeEntryLedger = timeEntryLedger;
+    this.issueResolver = issueResolver;
+    this.projectAssignmentProvider = projectAssignmentProvider;
+    this.writeQueue = writeQueue;
+    this.metrics = metrics;
+    this.objectMapper = objectMapper;
+    this.syncLock = syncLock;
+    this.resolveExecutor = resolveExecutor;
+    // keeps every resolve thread busy without holding the whole fetch in memory
+    this.resolveWindow = RESOLVE_WINDOW_PER_CORE * Runtime.getRuntime().availableProcessors();
+    this.applyBatchSize = config.applyBatchSize();
+  }
+
+  public PlanSummary plan(Path planFile, boolean full) {
+    var checkpoint = full ? SyncCheckpointStore.SyncCheckpoint.EMPTY : checkpointStore.load();
+    var run = checkpointStore.startRun(checkpoint);
+    timeEntryLedger.ensureReconciled();
+    var currentUser = jiraService.getCurrentUser();
+    var catalog = projectAssignmentProvider.get();
+
+    // the fetch is the only remote work, resolving is cpu bound and runs on every core while the
+    // fetch continues; entries are written in fetch order as soon as they are resolved
+    Deque<CompletableFuture<PlannedEntry>> inFlight = new ArrayDeque<>();
+    Map<Confidence, Integer> counts = new EnumMap<>(Confidence.class);
+    try {
+      if (planFile.getParent() != null) {
+        Files.createDirectories(planFile.getParent());
+      }
+      try (var writer =
+          objectMapper
+              .writer()
+              .withRootValueSeparator(System.lineSeparator())
+              .writeValues(planFile.toFile())) {
+        for (var issue :
+            jiraService.getIssuesUpdatedSince(currentUser, run, run.pendingReviewKeys())) {
+          var updated = JiraIssueParser.getUpdated(issue);
+          if (checkpoint.isHandled(issue.key(), updated) || timeEntryLedger.contains(issue.key())) {
+            metrics.issue("already-synced");
+            continue;
+          }
+          metrics.issue("processed");
+          if (inFlight.size() >= resolveWindow) {
+            write(writer, inFlight.poll().join(), counts);
+          }
+          inFlight.add(
+              CompletableFuture.supplyAsync(
+                  () -> planEntry(issue, catalog, currentUser), resolveExecutor));
+        }
+        while (!inFlight.isEmpty()) {
+          write(writer, inFlight.poll().join(), counts);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write the plan " + planFile, e);
+    }
+    return new PlanSummary(
+        planFile,
+        counts.getOrDefault(Confidence.READY, 0),
+        counts.getOrDefault(Confidence.AMBIGUOUS, 0),
+        counts.getOrDefault(Confidence.INCOMPLETE, 0));
+  }
+
+  private static void write(
+      SequenceWriter writer, PlannedEntry entry, Map<Confidence, Integer> counts)
+      throws IOException {
+    writer.write(entry);
+    counts.merge(entry.confidence(), 1, Integer::sum);
+  }
+
+  private PlannedEntry planEntry(
+      JiraService.BasicIssue issue,
+      ProjectAssignmentCatalog catalog,
+      JiraService.JiraUser currentUser) {
+    var resolution = issueResolver.resolve(issue, catalog, currentUser);
+    Confidence confidence =
+        !resolution.isComplete()
+            ? Confidence.INCOMPLETE
+            : issueResolver.matchingProjectCount(issue, catalog) > 1
+                ? Confidence.AMBIGUOUS
+                : Confidence.READY;
+    return new PlannedEntry(
+        issue.key(),
+        issue.fields().summary(),
+        JiraIssueParser.getUpdated(issue),
+        resolution.projectAssignment() != null
+            ? resolution.projectAssignment().project().id()
+            : null,
+        resolution.projectAssignment() != null
+            ? resolution.projectAssignment().project().name()
+            : null,
+        resolution.taskAssignment() != null ? resolution.taskAssignment().task().id() : null,
+        resolution.taskAssignment() != null ? resolution.taskAssignment().task().name() : null,
+        resolution.spentDate(),
+        resolution.hours(),
+        confidence);
+  }
+
+  /**
+   * Submits the ready entries of a plan, and the ambiguous ones when asked to. The file is read one
+   * entry at a time and at most one batch of writes is in flight, so plans of any size apply in
+   * constant memory.
+   */
+  public ApplySummary apply(Path planFile, boolean includeAmbiguous) {
+    return syncLock.run(() -> applyPlan(planFile, includeAmbiguous));
+  }
+
+  private ApplySummary applyPlan(Path planFile, boolean includeAmbiguous) {
+    timeEntryLedger.ensureReconciled();
+    Deque<CompletableFuture<Boolean>> inFlight = new ArrayDeque<>();
+    List<String> failures = new ArrayList<>();
+    int created = 0;
+    int skipped = 0;
+    try (var entries =
+        objectMapper.readerFor(PlannedEntry.class).<PlannedEntry>readValues(planFile.toFile())) {
+      while (entries.hasNextValue()) {
+        var entry = entries.nextValue();
+        if (!isSubmittable(entry, includeAmbiguous) || timeEntryLedger.contains(entry.issueKey())) {
+          skipped++;
+          continue;
+        }
+        if (inFlight.size() >= applyBatchSize) {
+          created += drain(inFlight);
+        }
+        inFlight.add(submit(entry, failures));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read the plan " + planFile, e);
+    } finally {
+      created += drain(inFlight);
+    }
+    return new ApplySummary(created, skipped, List.copyOf(failures));
+  }
+
+  private static boolean isSubmittable(PlannedEntry entry, boolean includeAmbiguous) {
+    boolean complete =
+        entry.projectId() != null
+            && entry.taskId() != null
+            && entry.spentDate() != null
+            && entry.hours() != null;
+    return complete
+        && (entry.confidence() == Confidence.READY
+            || (includeAmbiguous && entry.confidence() == Confidence.AMBIGUOUS));
+  }
+
+  private CompletableFuture<Boolean> submit(PlannedEntry entry, List<String> failures) {
+    return writeQueue
+        .submit(
+            entry.projectId(),
+            entry.taskId(),
+            entry.spentDate(),
+            entry.hours(),
+            entry.issueKey(),
+            jiraService.externalReference(entry.issueKey()))
+        .handle(
+            (created, e) -> {
+              if (e != null) {
+                Throwable cause =
+                    e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                metrics.issue("failed");
+                synchronized (failures) {
+                  failures.add(entry.issueKey() + ": " + cause.getMessage());
+                }
+                return false;
+              }
+              timeEntryLedger.record(entry.issueKey(), created);
+              metrics.issue("created");
+              return true;
+            });
+  }
+
+  private static int drain(Deque<CompletableFuture<Boolean>> inFlight) {
+    int created = 0;
+    while (!inFlight.isEmpty()) {
+      if (inFlight.poll().join()) {
+        created++;
+      }
+    }
+    return created;
+  }
+
+  public enum Confidence {
+    /** One matching project, every field resolved. */
+    READY,
+    /** Every field resolved, but more than one project matched. */
+    AMBIGUOUS,
+    /** Project, task, date or hours could not be derived. */
+    INCOMPLETE
+  }
+
+  public record PlannedEntry(
+      String issueKey,
+      String summary,
+      Instant updated,
+      Long projectId,
+      String project,
+      Long taskId,
+      String task,
+      LocalDate spentDate,
+      Double hours,
+      Confidence confidence) {}
+
+  public record PlanSummary(Path planFile, int ready, int ambiguous, int incomplete) {}
+
+  public record ApplySummary(int created, int skipped, List<String> failures) {}
+}
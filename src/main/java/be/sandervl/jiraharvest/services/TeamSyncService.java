@@ -0,0 +1,344 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraConfig;
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Service;
+
+/**
+ * Syncs a whole team from one process. Every member brings their own Jira and Harvest credentials,
+ * members on the same Jira site share one search that is filtered per member, and each member gets
+ * a report in their own state directory next to their own ledger. The shared search runs with the
+ * Jira access of the first member of a site, every report names that member, since issues only the
+ * others can see are missing from it.
+ */
+@Service
+public class TeamSyncService {
+
+  private static final String TEAM_DIR = "team";
+  private static final String REPORT_FILE = "report.json";
+
+  private final JiraService jiraService;
+  private final HarvestService harvestService;
+  private final TimeEntryLedger timeEntryLedger;
+  private final IssueResolver issueResolver;
+  private final SyncMetrics metrics;
+  private final ObjectMapper objectMapper;
+  private final SyncLock syncLock;
+  private final JiraHarvestSyncConfig config;
+
+  public TeamSyncService(
+      JiraService jiraService,
+      HarvestService harvestService,
+      TimeEntryLedger timeEntryLedger,
+      IssueResolver issueResolver,
+      SyncMetrics metrics,
+      ObjectMapper objectMapper,
+      SyncLock syncLock,
+      JiraHarvestSyncConfig config) {
+    this.jiraService = jiraService;
+    this.harvestService = harvestService;
+    this.timeEntryLedger = timeEntryLedger;
+    this.issueResolver = issueResolver;
+    this.metrics = metrics;
+    this.objectMapper = objectMapper;
+    this.syncLock = syncLock;
+    this.config = config;
+  }
+
+  public List<TeamMember> loadRoster(Path rosterFile) {
+    List<TeamMember> roster;
+    try {
+      roster =
+          objectMapper.readValue(rosterFile.toFile(), new TypeReference<List<TeamMember>>() {});
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read team roster " + rosterFile, e);
+    }
+    // the directory holds the member's ledger, two members sharing it would suppress each other
+    Map<Path, TeamMember> directories = new HashMap<>();
+    for (var member : roster) {
+      var other = directories.putIfAbsent(memberDir(member), member);
+      if (other != null) {
+        throw new RuntimeException(
+            String.format(
+                "Could not load team roster %s, '%s' and '%s' map to the same state directory %s",
+                rosterFile, other.name(), member.name(), memberDir(member)));
+      }
+    }
+    return roster;
+  }
+
+  public List<MemberReport> sync(List<TeamMember> roster) {
+    return syncLock.run(() -> syncAll(roster));
+  }
+
+  private List<MemberReport> syncAll(List<TeamMember> roster) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService members =
+        Executors.newFixedThreadPool(
+            config.teamConcurrency(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "team-sync-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      Map<TeamMember, CompletableFuture<MemberSession>> sessions = new LinkedHashMap<>();
+      for (var member : roster) {
+        sessions.put(member, CompletableFuture.supplyAsync(() -> open(member), members));
+      }
+
+      Map<String, List<MemberSession>> sites = new LinkedHashMap<>();
+      Map<TeamMember, CompletableFuture<MemberReport>> reports = new LinkedHashMap<>();
+      sessions.forEach(
+          (member, session) -> {
+            try {
+              var opened = session.join();
+              sites.computeIfAbsent(opened.jira().url(), url -> new ArrayList<>()).add(opened);
+            } catch (CompletionException e) {
+              reports.put(member, CompletableFuture.completedFuture(failed(member, e.getCause())));
+            }
+          });
+
+      Instant since = jiraService.windowStart();
+      for (var site : sites.values()) {
+        // the first member searches for the whole site, the others filter its result locally
+        var searcher = site.get(0);
+        List<JiraService.BasicIssue> issues;
+        try (var found =
+            searcher
+                .jira()
+                .searchIssuesAssignedTo(
+                    searcher.user(), site.stream().map(MemberSession::user).toList(), since)) {
+          issues = found.toList();
+        } catch (RuntimeException e) {
+          site.forEach(
+              session ->
+                  reports.put(
+                      session.member(),
+                      CompletableFuture.completedFuture(failed(session.member(), e))));
+          continue;
+        }
+        for (var session : site) {
+          reports.put(
+              session.member(),
+              CompletableFuture.supplyAsync(
+                      () -> syncMember(session, issues, searcher.member().name()), members)
+                  .exceptionally(e -> failed(session.member(), e)));
+        }
+      }
+
+      return roster.stream()
+          .map(reports::get)
+          .map(CompletableFuture::join)
+          .map(this::writeReport)
+          .toList();
+    } finally {
+      members.shutdownNow();
+    }
+  }
+
+  private MemberSession open(TeamMember member) {
+    var jira =
+        jiraService.withCredentials(
+            new JiraConfig(member.jiraUrl(), member.jiraUsername(), member.jiraToken()));
+    var harvest =
+        harvestService.withCredentials(
+            member.harvestUrl(), member.harvestToken(), member.harvestAccountId());
+    return new MemberSession(member, jira, jira.getCurrentUser(), harvest);
+  }
+
+  private MemberReport syncMember(
+      MemberSession session, List<JiraService.BasicIssue> issues, String searchedAs) {
+    var ledger = timeEntryLedger.forAccount(session.harvest(), memberDir(session.member()));
+    ledger.ensureReconciled();
+    var catalog = ProjectAssignmentCatalog.of(session.harvest().getProjectAssignments());
+    var writeQueue = new HarvestWriteQueue(session.harvest(), config, metrics);
+    try {
+      List<CompletableFuture<IssueReport>> results = new ArrayList<>();
+      for (var issue : issues) {
+        if (!session.jira().isWorkedOnBy(session.user(), issue)) {
+          continue;
+        }
+        if (ledger.contains(issue.key())) {
+          metrics.issue("already-synced");
+          results.add(
+              CompletableFuture.completedFuture(IssueReport.of(issue, "already-synced", null)));
+          continue;
+        }
+        metrics.issue("processed");
+        var resolution = issueResolver.resolve(issue, catalog, session.user());
+        if (!issueResolver.isUnambiguous(resolution, catalog)) {
+          metrics.issue("skipped");
+          results.add(
+              CompletableFuture.completedFuture(IssueReport.of(issue, "needs-review", resolution)));
+          continue;
+        }
+        // the member's own start, daemon or cron runs book into another ledger, so ask Harvest
+        var externalReference = session.jira().externalReference(issue.key());
+        Optional<HarvestService.TimeEntry> booked;
+        try {
+          booked = session.harvest().findTimeEntry(externalReference, resolution.spentDate());
+        } catch (RuntimeException e) {
+          metrics.issue("failed");
+          results.add(
+              CompletableFuture.completedFuture(
+                  IssueReport.of(issue, "failed", resolution).withMessage(e.getMessage())));
+          continue;
+        }
+        if (booked.isPresent()) {
+          ledger.record(issue.key(), booked.get());
+          metrics.issue("already-synced");
+          results.add(
+              CompletableFuture.completedFuture(IssueReport.of(issue, "already-synced", null)));
+          continue;
+        }
+        results.add(
+            writeQueue
+                .submit(
+                    resolution.projectAssignment().project().id(),
+                    resolution.taskAssignment().task().id(),
+                    resolution.spentDate(),
+                    resolution.hours(),
+                    issue.key(),
+                    externalReference)
+                .handle(
+                    (created, e) -> {
+                      if (e != null) {
+                        metrics.issue("failed");
+                        return IssueReport.of(issue, "failed", resolution)
+                            .withMessage(rootCause(e).getMessage());
+                      }
+                      ledger.record(issue.key(), created);
+                      metrics.issue("created");
+                      return IssueReport.of(issue, "created", resolution);
+                    }));
+      }
+      return new MemberReport(
+          session.member().name(),
+          session.user().accountId(),
+          searchedAs,
+          results.stream().map(CompletableFuture::join).toList(),
+          null,
+          null);
+    } finally {
+      writeQueue.destroy();
+    }
+  }
+
+  private MemberReport failed(TeamMember member, Throwable e) {
+    return new MemberReport(member.name(), null, null, List.of(), rootCause(e).getMessage(), null);
+  }
+
+  private MemberReport writeReport(MemberReport report) {
+    Path reportFile = memberDir(report.member()).resolve(REPORT_FILE);
+    try {
+      Files.createDirectories(reportFile.getParent());
+      var written = report.withReportFile(reportFile.toString());
+      objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), written);
+      return written;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write team report " + reportFile, e);
+    }
+  }
+
+  private Path memberDir(TeamMember member) {
+    return memberDir(member.name());
+  }
+
+  private Path memberDir(String memberName) {
+    String directory = memberName.toLowerCase().replaceAll("[^a-z0-9._-]+", "-");
+    return Path.of(config.stateDir()).resolve(TEAM_DIR).resolve(directory);
+  }
+
+  private static Throwable rootCause(Throwable e) {
+    while (e instanceof CompletionException && e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e;
+  }
+
+  public record TeamMember(
+      String name,
+      String jiraUrl,
+      String jiraUsername,
+      String jiraToken,
+      String harvestUrl,
+      String harvestToken,
+      String harvestAccountId) {}
+
+  private record MemberSession(
+      TeamMember member, JiraService jira, JiraService.JiraUser user, HarvestService harvest) {}
+
+  /** {@code searchedAs} is the member whose Jira access found the issues. */
+  public record MemberReport(
+      String member,
+      String accountId,
+      String searchedAs,
+      List<IssueReport> issues,
+      String error,
+      String reportFile) {
+
+    public Map<String, Long> outcomes() {
+      return issues.stream()
+          .collect(
+              Collectors.groupingBy(
+                  IssueReport::outcome, LinkedHashMap::new, Collectors.counting()));
+    }
+
+    MemberReport withReportFile(String reportFile) {
+      return new MemberReport(member, accountId, searchedAs, issues, error, reportFile);
+    }
+  }
+
+  public record IssueReport(
+      String issueKey,
+      String summary,
+      String outcome,
+      String project,
+      String task,
+      LocalDate spentDate,
+      Double hours,
+      String message) {
+
+    static IssueReport of(
+        JiraService.BasicIssue issue, String outcome, IssueResolver.Resolution resolution) {
+      return new IssueReport(
+          issue.key(),
+          issue.fields().summary(),
+          outcome,
+          resolution == null || resolution.projectAssignment() == null
+              ? null
+              : resolution.projectAssignment().project().name(),
+          resolution == null || resolution.taskAssignment() == null
+              ? null
+              : resolution.taskAssignment().task().name(),
+          resolution == null ? null : resolution.spentDate(),
+          resolution == null ? null : resolution.hours(),
+          null);
+    }
+
+    IssueReport withMessage(String message) {
+      return new IssueReport(issueKey, summary, outcome, project, task, spentDate, hours, message);
+    }
+  }
+}
@@ -0,0 +1,279 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Remembers which Harvest time entry was created for which Jira issue, so a sync can skip issues
+ * without downloading the time entries. The ledger is an append-only JSON lines file where the last
+ * line for a key wins, and a reconcile against Harvest picks up entries made elsewhere and forgets
+ * entries that were deleted in Harvest.
+ */
+@Service
+public class TimeEntryLedger {
+
+  private static final Logger LOG = Logger.getLogger(TimeEntryLedger.class.getName());
+  private static final String LEDGER_FILE = "ledger.jsonl";
+  private static final String RECONCILED_FILE = "ledger.reconciled";
+  private static final Pattern ISSUE_KEY = Pattern.compile("[A-Z][A-Z0-9_]+-\\d+");
+
+  private final ObjectMapper objectMapper;
+  private final HarvestService harvestService;
+  private final ExecutorService executor;
+  private final Path ledgerFile;
+  private final Path reconciledFile;
+  private final Duration reconcileInterval;
+  private final int daysToGoBack;
+  private final Map<String, LedgerEntry> entries = new ConcurrentHashMap<>();
+  private boolean loaded;
+  private int lines;
+  private CompletableFuture<Void> reconciling = CompletableFuture.completedFuture(null);
+
+  @Autowired
+  public TimeEntryLedger(
+      ObjectMapper objectMapper,
+      HarvestService harvestService,
+      JiraHarvestSyncConfig config,
+      ExecutorService remoteCallExecutor) {
+    this(
+        objectMapper,
+        harvestService,
+        Path.of(config.stateDir()),
+        Duration.ofHours(config.ledgerReconcileHours()),
+        config.daysToGoBack(),
+        remoteCallExecutor);
+  }
+
+  private TimeEntryLedger(
+      ObjectMapper objectMapper,
+      HarvestService harvestService,
+      Path stateDir,
+      Duration reconcileInterval,
+      int daysToGoBack,
+      ExecutorService remoteCallExecutor) {
+    this.objectMapper = objectMapper;
+    this.harvestService = harvestService;
+    this.executor = remoteCallExecutor;
+    this.ledgerFile = stateDir.resolve(LEDGER_FILE);
+    this.reconciledFile = stateDir.resolve(RECONCILED_FILE);
+    this.reconcileInterval = reconcileInterval;
+    this.daysToGoBack = daysToGoBack;
+  }
+
+  /** A separate ledger for another Harvest account, kept in its own state directory. */
+  public TimeEntryLedger forAccount(HarvestService harvestService, Path stateDir) {
+    return new TimeEntryLedger(
+        objectMapper, harvestService, stateDir, reconcileInterval, daysToGoBack, executor);
+  }
+
+  public boolean contains(String issueKey) {
+    load();
+    return entries.containsKey(issueKey);
+  }
+
+  public Optional<LedgerEntry> get(String issueKey) {
+    load();
+    return Optional.ofNullable(entries.get(issueKey));
+  }
+
+  public Collection<LedgerEntry> entries() {
+    load();
+    return List.copyOf(entries.values());
+  }
+
+  public void record(String issueKey, HarvestService.TimeEntry timeEntry) {
+    append(
+        new LedgerEntry(
+            issueKey, timeEntry.id(), timeEntry.hours(), timeEntry.spentDate(), Instant.now()));
+  }
+
+  /**
+   * Makes sure the ledger can be trusted for dedupe: a ledger that was never reconciled is
+   * reconciled right away, a stale one is reconciled in the background.
+   */
+  public void ensureReconciled() {
+    Optional<Instant> lastReconciled = lastReconciled();
+    if (lastReconciled.isEmpty()) {
+      reconcile();
+    } else if (lastReconciled.get().plus(reconcileInterval).isBefore(Instant.now())) {
+      reconcileInBackground();
+    }
+  }
+
+  public synchronized CompletableFuture<Void> reconcileInBackground() {
+    if (reconciling.isDone()) {
+      reconciling =
+          CompletableFuture.runAsync(this::reconcile, executor)
+              .exceptionally(
+                  e -> {
+                    LOG.log(Level.WARNING, "Could not reconcile the time entry ledger", e);
+                    return null;
+                  });
+    }
+    return reconciling;
+  }
+
+  public Reconciliation reconcile() {
+    load();
+    Instant startedAt = Instant.now();
+    LocalDate from = LocalDate.now().minusDays(daysToGoBack);
+    Set<Long> harvestIds = new HashSet<>();
+    int adopted = 0;
+    try (var timeEntries = harvestService.streamTimeEntries()) {
+      for (var timeEntry : (Iterable<HarvestService.TimeEntry>) timeEntries::iterator) {
+        harvestIds.add(timeEntry.id());
+        String issueKey = issueKeyOf(timeEntry);
+        if (issueKey != null && !entries.containsKey(issueKey)) {
+          record(issueKey, timeEntry);
+          adopted++;
+        }
+      }
+    }
+    int forgotten = 0;
+    for (var entry : entries.values()) {
+      // only entries the fetch could have seen, created entries are not in it yet
+      if (entry.recordedAt().isBefore(startedAt)
+          && entry.spentDate() != null
+          && !entry.spentDate().isBefore(from)
+          && !harvestIds.contains(entry.timeEntryId())) {
+        append(new LedgerEntry(entry.issueKey(), null, 0, null, Instant.now()));
+        forgotten++;
+      }
+    }
+    compactIfNeeded();
+    markReconciled(startedAt);
+    return new Reconciliation(adopted, forgotten, entries.size());
+  }
+
+  private static String issueKeyOf(HarvestService.TimeEntry timeEntry) {
+    if (timeEntry.externalReference() != null && timeEntry.externalReference().id() != null) {
+      return timeEntry.externalReference().id();
+    }
+    String notes = timeEntry.notes() == null ? "" : timeEntry.notes().trim();
+    return ISSUE_KEY.matcher(notes).matches() ? notes : null;
+  }
+
+  private synchronized void load() {
+    if (loaded) {
+      return;
+    }
+    if (Files.exists(ledgerFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(ledgerFile, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isBlank()) {
+            continue;
+          }
+          lines++;
+          try {
+            apply(objectMapper.readValue(line, LedgerEntry.class));
+          } catch (IOException e) {
+            // a torn last line from an interrupted write
+            LOG.warning("Skipping unreadable ledger line in " + ledgerFile);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read time entry ledger " + ledgerFile, e);
+      }
+    }
+    loaded = true;
+  }
+
+  private synchronized void append(LedgerEntry entry) {
+    load();
+    try {
+      Files.createDirectories(ledgerFile.getParent());
+      Files.writeString(
+          ledgerFile,
+          objectMapper.writeValueAsString(entry) + "\n",
+          StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write time entry ledger " + ledgerFile, e);
+    }
+    lines++;
+    apply(entry);
+  }
+
+  private void apply(LedgerEntry entry) {
+    if (entry.timeEntryId() == null) {
+      entries.remove(entry.issueKey());
+    } else {
+      entries.put(entry.issueKey(), entry);
+    }
+  }
+
+  private synchronized void compactIfNeeded() {
+    if (lines <= 2 * entries.size() + 100) {
+      return;
+    }
+    try {
+      Path tempFile = Files.createTempFile(ledgerFile.getParent(), LEDGER_FILE, ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        for (var entry : entries.values()) {
+          writer.write(objectMapper.writeValueAsString(entry));
+          writer.newLine();
+        }
+      }
+      Files.move(
+          tempFile,
+          ledgerFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      lines = entries.size();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not compact time entry ledger " + ledgerFile, e);
+    }
+  }
+
+  private Optional<Instant> lastReconciled() {
+    try {
+      return Files.exists(reconciledFile)
+          ? Optional.of(Instant.parse(Files.readString(reconciledFile).trim()))
+          : Optional.empty();
+    } catch (IOException | RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  private void markReconciled(Instant at) {
+    try {
+      Files.createDirectories(reconciledFile.getParent());
+      Files.writeString(reconciledFile, at.toString());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write " + reconciledFile, e);
+    }
+  }
+
+  public record LedgerEntry(
+      String issueKey, Long timeEntryId, double hours, LocalDate spentDate, Instant recordedAt) {}
+
+  public record Reconciliation(int adopted, int forgotten, int size) {}
+}
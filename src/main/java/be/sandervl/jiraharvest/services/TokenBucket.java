@@ -0,0 +1,46 @@
+package be.sandervl.jiraharvest.services;
+
+import java.time.Duration;
+
+/** Blocking token bucket that refills {@code capacity} tokens evenly over {@code window}. */
+public class TokenBucket {
+
+  private final long capacity;
+  private final double tokensPerNano;
+  private double tokens;
+  private long lastRefill;
+
+  public TokenBucket(long capacity, Duration window) {
+    this.capacity = capacity;
+    this.tokensPerNano = (double) capacity / window.toNanos();
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  public void acquire() throws InterruptedException {
+    while (true) {
+      long waitNanos;
+      synchronized (this) {
+        refill();
+        if (tokens >= 1) {
+          tokens -= 1;
+          return;
+        }
+        waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+      }
+      Thread.sleep(Math.max(1, waitNanos / 1_000_000), (int) (waitNanos % 1_000_000));
+    }
+  }
+
+  /** Empties the bucket, used when the server tells us to back off regardless of our own count. */
+  public synchronized void drain() {
+    refill();
+    tokens = Math.min(tokens, 0);
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+}
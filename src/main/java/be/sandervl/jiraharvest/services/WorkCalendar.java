@@ -0,0 +1,164 @@
+package be.sandervl.jiraharvest.services;
+
+import be.sandervl.jiraharvest.config.JiraHarvestSyncConfig;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Working time between two instants: whole weeks are counted in one step, only the partial first
+ * and last day are clamped to the working hours. Holidays come from a plain file with one {@code
+ * yyyy-MM-dd} date per line.
+ */
+@Service
+public class WorkCalendar {
+
+  private final LocalTime workdayStart;
+  private final LocalTime workdayEnd;
+  private final Duration workday;
+  private final Set<DayOfWeek> workingDays;
+  private final long[] holidays;
+  private final ZoneId defaultZone;
+
+  @Autowired
+  public WorkCalendar(JiraHarvestSyncConfig config) {
+    this(
+        LocalTime.parse(config.workdayStart()),
+        LocalTime.parse(config.workdayEnd()),
+        config.workingDays() == null ? Set.of() : Set.copyOf(config.workingDays()),
+        readHolidays(config.holidaysFile()),
+        ZoneId.systemDefault());
+  }
+
+  public WorkCalendar(
+      LocalTime workdayStart,
+      LocalTime workdayEnd,
+      Set<DayOfWeek> workingDays,
+      Set<LocalDate> holidays,
+      ZoneId defaultZone) {
+    this.workdayStart = workdayStart;
+    this.workdayEnd = workdayEnd;
+    this.workday =
+        workdayEnd.isAfter(workdayStart)
+            ? Duration.between(workdayStart, workdayEnd)
+            : Duration.ZERO;
+    this.workingDays = EnumSet.noneOf(DayOfWeek.class);
+    this.workingDays.addAll(workingDays);
+    this.holidays =
+        holidays.stream()
+            .filter(day -> this.workingDays.contains(day.getDayOfWeek()))
+            .mapToLong(LocalDate::toEpochDay)
+            .sorted()
+            .distinct()
+            .toArray();
+    this.defaultZone = defaultZone;
+  }
+
+  public ZoneId zoneOf(JiraService.JiraUser user) {
+    if (user == null || user.timeZone() == null) {
+      return defaultZone;
+    }
+    try {
+      return ZoneId.of(user.timeZone());
+    } catch (DateTimeException e) {
+      return defaultZone;
+    }
+  }
+
+  public Duration workingTime(LocalDateTime start, LocalDateTime end) {
+    if (!end.isAfter(start)) {
+      return Duration.ZERO;
+    }
+    LocalDate firstDay = start.toLocalDate();
+    LocalDate lastDay = end.toLocalDate();
+    if (firstDay.equals(lastDay)) {
+      return isWorkingDay(firstDay)
+          ? overlap(start.toLocalTime(), end.toLocalTime())
+          : Duration.ZERO;
+    }
+    Duration total = Duration.ZERO;
+    if (isWorkingDay(firstDay)) {
+      total = total.plus(overlap(start.toLocalTime(), workdayEnd));
+    }
+    if (isWorkingDay(lastDay)) {
+      total = total.plus(overlap(workdayStart, end.toLocalTime()));
+    }
+    long fullDays = workingDaysBetween(firstDay.plusDays(1), lastDay);
+    return total.plus(workday.multipliedBy(fullDays));
+  }
+
+  public boolean isWorkingTime(Instant instant, ZoneId zone) {
+    LocalDateTime local = LocalDateTime.ofInstant(instant, zone);
+    LocalTime time = local.toLocalTime();
+    return isWorkingDay(local.toLocalDate())
+        && !time.isBefore(workdayStart)
+        && time.isBefore(workdayEnd);
+  }
+
+  /** Working days in {@code [from, to)}. */
+  public long workingDaysBetween(LocalDate from, LocalDate to) {
+    long days = to.toEpochDay() - from.toEpochDay();
+    if (days <= 0) {
+      return 0;
+    }
+    long count = days / 7 * workingDays.size();
+    DayOfWeek dayOfWeek = from.getDayOfWeek();
+    for (long i = 0; i < days % 7; i++) {
+      if (workingDays.contains(dayOfWeek)) {
+        count++;
+      }
+      dayOfWeek = dayOfWeek.plus(1);
+    }
+    return count - holidaysBetween(from.toEpochDay(), to.toEpochDay());
+  }
+
+  private boolean isWorkingDay(LocalDate day) {
+    return workingDays.contains(day.getDayOfWeek())
+        && Arrays.binarySearch(holidays, day.toEpochDay()) < 0;
+  }
+
+  private Duration overlap(LocalTime from, LocalTime to) {
+    LocalTime start = from.isBefore(workdayStart) ? workdayStart : from;
+    LocalTime end = to.isAfter(workdayEnd) ? workdayEnd : to;
+    return end.isAfter(start) ? Duration.between(start, end) : Duration.ZERO;
+  }
+
+  private long holidaysBetween(long fromEpochDay, long toEpochDay) {
+    return insertionPoint(toEpochDay) - insertionPoint(fromEpochDay);
+  }
+
+  private int insertionPoint(long epochDay) {
+    int index = Arrays.binarySearch(holidays, epochDay);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private static Set<LocalDate> readHolidays(String holidaysFile) {
+    if (holidaysFile == null || holidaysFile.isBlank() || !Files.exists(Path.of(holidaysFile))) {
+      return Set.of();
+    }
+    try (var lines = Files.lines(Path.of(holidaysFile))) {
+      return lines
+          .map(String::trim)
+          .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+          .map(line -> LocalDate.parse(line.split("\\s+", 2)[0]))
+          .collect(Collectors.toSet());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read holidays " + holidaysFile, e);
+    }
+  }
+}
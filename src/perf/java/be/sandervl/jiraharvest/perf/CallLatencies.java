@@ -0,0 +1,108 @@
+package be.sandervl.jiraharvest.perf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/** Client-side latency of every call, grouped by method and path with the issue key blanked. */
+public class CallLatencies {
+
+  private final Map<String, List<Long>> nanosByCall = new ConcurrentHashMap<>();
+
+  public ClientHttpRequestFactory wrap(ClientHttpRequestFactory requestFactory) {
+    return (uri, method) -> new TimedRequest(requestFactory.createRequest(uri, method));
+  }
+
+  public Map<String, Summary> summaries() {
+    Map<String, Summary> summaries = new TreeMap<>();
+    nanosByCall.forEach(
+        (call, samples) -> {
+          long[] sorted;
+          synchronized (samples) {
+            sorted = samples.stream().mapToLong(Long::longValue).toArray();
+          }
+          Arrays.sort(sorted);
+          summaries.put(
+              call,
+              new Summary(
+                  sorted.length, percentile(sorted, 0.50), percentile(sorted, 0.99), max(sorted)));
+        });
+    return summaries;
+  }
+
+  public void reset() {
+    nanosByCall.clear();
+  }
+
+  private void record(HttpMethod method, URI uri, long nanos) {
+    String call = method.name() + " " + uri.getPath().replaceAll("/issue/[^/]+/", "/issue/{key}/");
+    var samples = nanosByCall.computeIfAbsent(call, c -> new ArrayList<>());
+    synchronized (samples) {
+      samples.add(nanos);
+    }
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1_000_000d;
+  }
+
+  private static double max(long[] sorted) {
+    return sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1_000_000d;
+  }
+
+  public record Summary(int calls, double p50Millis, double p99Millis, double maxMillis) {}
+
+  private class TimedRequest implements ClientHttpRequest {
+
+    private final ClientHttpRequest delegate;
+
+    TimedRequest(ClientHttpRequest delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      long start = System.nanoTime();
+      try {
+        return delegate.execute();
+      } finally {
+        record(delegate.getMethod(), delegate.getURI(), System.nanoTime() - start);
+      }
+    }
+
+    @Override
+    public OutputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+      return delegate.getMethod();
+    }
+
+    @Override
+    public URI getURI() {
+      return delegate.getURI();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+  }
+}
@@ -0,0 +1,309 @@
+package be.sandervl.jiraharvest.perf;
+
+import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.JiraService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the Jira and Harvest endpoints this tool calls, serving a generated dataset.
+ * Every response waits for the configured latency, page sizes are capped like the real APIs do and
+ * a share of the Harvest writes is answered with a 429.
+ */
+public class FakeRemoteServer implements AutoCloseable {
+
+  private final Options options;
+  private final ObjectMapper objectMapper =
+      new ObjectMapper()
+          .registerModule(new JavaTimeModule())
+          .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  private final List<JiraService.BasicIssue> issues;
+  private final Map<String, JiraService.BasicIssue> issuesByKey;
+  private final List<HarvestService.ProjectAssignment> assignments;
+  private final List<HarvestService.TimeEntry> timeEntries = new CopyOnWriteArrayList<>();
+  private final AtomicLong timeEntryIds = new AtomicLong(1_000_000);
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private final HttpServer server;
+  private final ExecutorService handlers = Executors.newCachedThreadPool();
+
+  public FakeRemoteServer(Options options) throws IOException {
+    this.options = options;
+    this.assignments = PerfData.assignments(options.seed(), options.assignments());
+    this.issues =
+        PerfData.issues(
+            options.seed(),
+            options.issues(),
+            options.historySize(),
+            PerfData.clientNames(assignments),
+            LocalDate.now().minusDays(6));
+    this.issuesByKey =
+        issues.stream().collect(Collectors.toMap(JiraService.BasicIssue::key, Function.identity()));
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 512);
+    server.setExecutor(handlers);
+    server.createContext("/rest/api/2/myself", exchange -> handle(exchange, this::myself));
+    server.createContext("/rest/api/2/search", exchange -> handle(exchange, this::search));
+    server.createContext("/rest/api/2/issue/", exchange -> handle(exchange, this::changelog));
+    server.createContext(
+        "/api/v2/users/me/project_assignments",
+        exchange -> handle(exchange, query -> Map.of("project_assignments", assignments)));
+    server.createContext(
+        "/api/v2/time_entries",
+        exchange -> {
+          if (exchange.getRequestMethod().equals("POST")) {
+            createTimeEntry(exchange);
+          } else {
+            handle(exchange, this::listTimeEntries);
+          }
+        });
+    server.start();
+  }
+
+  public String url() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  public int issueCount() {
+    return issues.size();
+  }
+
+  public long requests() {
+    return requests.sum();
+  }
+
+  public long throttled() {
+    return throttled.sum();
+  }
+
+  public int createdTimeEntries() {
+    return timeEntries.size();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    handlers.shutdownNow();
+  }
+
+  private Object myself(Map<String, String> query) {
+    return new JiraService.JiraUser(
+        PerfData.CURRENT_USER, "perf@example.com", "Perf User", "true", "Europe/Brussels");
+  }
+
+  private Object search(Map<String, String> query) {
+    int startAt = Integer.parseInt(query.getOrDefault("startAt", "0"));
+    int maxResults =
+        Math.min(
+            options.searchPageLimit(), Integer.parseInt(query.getOrDefault("maxResults", "50")));
+    boolean withChangelog = query.getOrDefault("expand", "").contains("changelog");
+    var page =
+        issues.subList(
+            Math.min(startAt, issues.size()), Math.min(startAt + maxResults, issues.size()));
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("startAt", startAt);
+    body.put("maxResults", maxResults);
+    body.put("total", issues.size());
+    body.put(
+        "issues",
+        page.stream()
+            .map(
+                issue ->
+                    withChangelog
+                        ? issue
+                        : new JiraService.BasicIssue(issue.key(), issue.fields(), null))
+            .toList());
+    return body;
+  }
+
+  private Object changelog(Map<String, String> query) {
+    var issue = issuesByKey.get(query.get("key"));
+    if (issue == null) {
+      return null;
+    }
+    var histories = issue.changelog().histories();
+    int startAt = Integer.parseInt(query.getOrDefault("startAt", "0"));
+    int maxResults = Math.min(100, Integer.parseInt(query.getOrDefault("maxResults", "100")));
+    int end = Math.min(startAt + maxResults, histories.size());
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("startAt", startAt);
+    body.put("maxResults", maxResults);
+    body.put("total", histories.size());
+    body.put("isLast", end >= histories.size());
+    body.put("values", histories.subList(Math.min(startAt, histories.size()), end));
+    return body;
+  }
+
+  private Object listTimeEntries(Map<String, String> query) {
+    LocalDate from = LocalDate.parse(query.get("from"));
+    LocalDate to = LocalDate.parse(query.get("to"));
+    int page = Integer.parseInt(query.getOrDefault("page", "1"));
+    String externalReferenceId = query.get("external_reference_id");
+    int perPage = options.harvestPageLimit();
+    var inRange =
+        timeEntries.stream()
+            .filter(entry -> !entry.spentDate().isBefore(from) && !entry.spentDate().isAfter(to))
+            .filter(
+                entry ->
+                    externalReferenceId == null
+                        || (entry.externalReference() != null
+                            && externalReferenceId.equals(entry.externalReference().id())))
+            .toList();
+    int totalPages = Math.max(1, (inRange.size() + perPage - 1) / perPage);
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put(
+        "time_entries",
+        inRange.subList(
+            Math.min((page - 1) * perPage, inRange.size()),
+            Math.min(page * perPage, inRange.size())));
+    body.put("per_page", perPage);
+    body.put("total_pages", totalPages);
+    body.put("total_entries", inRange.size());
+    body.put("next_page", page < totalPages ? page + 1 : null);
+    body.put("page", page);
+    return body;
+  }
+
+  private void createTimeEntry(HttpExchange exchange) throws IOException {
+    requests.increment();
+    try (exchange) {
+      delay();
+      if (ThreadLocalRandom.current().nextDouble() < options.throttleRate()) {
+        throttled.increment();
+        exchange.getResponseHeaders().add("Retry-After", "1");
+        exchange.sendResponseHeaders(429, -1);
+        return;
+      }
+      var create =
+          objectMapper.readValue(exchange.getRequestBody(), HarvestService.TimeEntryCreate.class);
+      var assignment =
+          assignments.stream()
+              .filter(candidate -> candidate.project().id().equals(create.projectId()))
+              .findFirst()
+              .orElse(null);
+      var taskAssignment =
+          assignment == null
+              ? null
+              : assignment.taskAssignments().stream()
+                  .filter(candidate -> candidate.task().id().equals(create.taskId()))
+                  .findFirst()
+                  .orElse(null);
+      var created =
+          new HarvestService.TimeEntry(
+              timeEntryIds.incrementAndGet(),
+              create.hours(),
+              LocalDate.parse(create.spentDate()),
+              LocalDateTime.now(),
+              assignment == null ? null : assignment.project(),
+              assignment == null ? null : assignment.client(),
+              taskAssignment == null ? null : taskAssignment.task(),
+              create.notes(),
+              taskAssignment,
+              create.externalReference());
+      timeEntries.add(created);
+      respond(exchange, 201, created);
+    }
+  }
+
+  private void handle(HttpExchange exchange, Function<Map<String, String>, Object> handler)
+      throws IOException {
+    requests.increment();
+    try (exchange) {
+      delay();
+      Map<String, String> query = query(exchange);
+      Object body = handler.apply(query);
+      if (body == null) {
+        exchange.sendResponseHeaders(404, -1);
+      } else {
+        respond(exchange, 200, body);
+      }
+    }
+  }
+
+  private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+    byte[] json = objectMapper.writeValueAsBytes(body);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (options.gzip() && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+      exchange.sendResponseHeaders(status, 0);
+      try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+        out.write(json);
+      }
+    } else {
+      exchange.sendResponseHeaders(status, json.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(json);
+      }
+    }
+  }
+
+  private void delay() {
+    long millis = options.latency().toMillis();
+    if (options.jitter().toMillis() > 0) {
+      millis += ThreadLocalRandom.current().nextLong(options.jitter().toMillis() + 1);
+    }
+    if (millis > 0) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static Map<String, String> query(HttpExchange exchange) {
+    Map<String, String> query = new HashMap<>();
+    String path = exchange.getRequestURI().getPath();
+    if (path.startsWith("/rest/api/2/issue/")) {
+      query.put("key", path.substring("/rest/api/2/issue/".length()).split("/")[0]);
+    }
+    String raw = exchange.getRequestURI().getRawQuery();
+    if (raw != null) {
+      for (String pair : raw.split("&")) {
+        int eq = pair.indexOf('=');
+        if (eq > 0) {
+          query.put(
+              URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+              URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return query;
+  }
+
+  public record Options(
+      long seed,
+      int issues,
+      int historySize,
+      int assignments,
+      Duration latency,
+      Duration jitter,
+      int searchPageLimit,
+      int harvestPageLimit,
+      double throttleRate,
+      boolean gzip) {}
+}
@@ -0,0 +1,102 @@
+package be.sandervl.jiraharvest.perf;
+
+import be.sandervl.jiraharvest.services.ChangelogAnalyzer;
+import be.sandervl.jiraharvest.services.JiraIssueParser;
+import be.sandervl.jiraharvest.services.JiraService;
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import be.sandervl.jiraharvest.services.WorkCalendar;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The parser methods on a single issue. The cold variants use a fresh {@link ChangelogAnalyzer} so
+ * the changelog is scanned every time, the warm ones hit the memoized summary like the second and
+ * third call during a sync do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueParserBenchmark {
+
+  @Param({"10", "100", "1000", "5000"})
+  int historySize;
+
+  SyncMetrics metrics;
+  WorkCalendar workCalendar;
+  JiraIssueParser warmParser;
+  JiraService.BasicIssue issue;
+  JiraService.JiraUser user;
+
+  @Setup
+  public void setUp() {
+    metrics = new SyncMetrics(new SimpleMeterRegistry());
+    workCalendar =
+        new WorkCalendar(
+            LocalTime.of(9, 0),
+            LocalTime.of(17, 0),
+            EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+            Set.of(LocalDate.of(2023, 4, 10), LocalDate.of(2023, 5, 1)),
+            ZoneId.of("Europe/Brussels"));
+    issue = PerfData.issues(42, 1, historySize, List.of("Acme")).get(0);
+    user = new JiraService.JiraUser(PerfData.CURRENT_USER, null, null, "true", "Europe/Brussels");
+    warmParser = new JiraIssueParser(new ChangelogAnalyzer(), workCalendar, metrics);
+    warmParser.getWorkedTimeForIssue(issue, user);
+  }
+
+  private JiraIssueParser coldParser() {
+    return new JiraIssueParser(new ChangelogAnalyzer(), workCalendar, metrics);
+  }
+
+  @Benchmark
+  public Optional<Duration> workedTimeCold() {
+    return coldParser().getWorkedTimeForIssue(issue, user);
+  }
+
+  @Benchmark
+  public Optional<Duration> workedTimeWarm() {
+    return warmParser.getWorkedTimeForIssue(issue, user);
+  }
+
+  @Benchmark
+  public Optional<LocalDate> workedOnCold() {
+    return coldParser().getWorkedOnTimeForIssue(issue);
+  }
+
+  @Benchmark
+  public Optional<LocalDate> workedOnWarm() {
+    return warmParser.getWorkedOnTimeForIssue(issue);
+  }
+
+  @Benchmark
+  public boolean isAssigneeCold() {
+    return coldParser().isCurrentAssigneeOrWasAssigneeInChangelog(user, issue);
+  }
+
+  @Benchmark
+  public boolean isAssigneeWarm() {
+    return warmParser.isCurrentAssigneeOrWasAssigneeInChangelog(user, issue);
+  }
+}
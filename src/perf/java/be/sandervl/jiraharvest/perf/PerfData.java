@@ -0,0 +1,181 @@
+package be.sandervl.jiraharvest.perf;
+
+import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.JiraService;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generators for benchmark input that looks like what Jira and Harvest return: changelogs
+ * cycle through the workflow statuses with reassignments and unrelated field edits in between, and
+ * catalogs have a few projects per client with a mix of billable and non-billable tasks.
+ */
+public final class PerfData {
+
+  public static final String CURRENT_USER = "account-0";
+
+  private static final DateTimeFormatter JIRA_TIMESTAMP =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+  private static final String[] STATUSES = {"To Do", "In Progress", "In Review", "Done"};
+  private static final String[] NOISE_FIELDS = {"description", "labels", "priority", "Sprint"};
+  private static final String[] NAME_PARTS = {
+    "Acme",
+    "Globex",
+    "Initech",
+    "Umbrella",
+    "Hooli",
+    "Vandelay",
+    "Stark",
+    "Wayne",
+    "Tyrell",
+    "Cyberdyne",
+    "Soylent",
+    "Wonka",
+    "Gringotts",
+    "Oscorp",
+    "Aperture",
+    "Black Mesa",
+    "Monarch",
+    "Nakatomi",
+    "Duff",
+    "Krusty"
+  };
+  private static final String[] TASK_NAMES = {
+    "Development billable",
+    "Development non-billable",
+    "Support billable",
+    "Meetings",
+    "Analysis billable",
+    "Internal"
+  };
+  private static final String[] SUMMARY_WORDS = {
+    "fix", "login", "page", "crash", "when", "exporting", "invoice", "update", "dependency",
+    "migrate", "database", "timeout", "on", "report", "add", "filter", "to", "dashboard"
+  };
+
+  private PerfData() {}
+
+  public static List<JiraService.BasicIssue> issues(
+      long seed, int count, int historySize, List<String> clientNames) {
+    return issues(seed, count, historySize, clientNames, LocalDate.of(2023, 3, 1));
+  }
+
+  public static List<JiraService.BasicIssue> issues(
+      long seed, int count, int historySize, List<String> clientNames, LocalDate firstDay) {
+    Random random = new Random(seed);
+    List<JiraService.BasicIssue> issues = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      issues.add(issue(random, "PERF-" + (i + 1), historySize, clientNames, firstDay));
+    }
+    return issues;
+  }
+
+  public static JiraService.BasicIssue issue(
+      Random random, String key, int historySize, List<String> clientNames, LocalDate firstDay) {
+    OffsetDateTime time =
+        firstDay
+            .plusDays(random.nextInt(5))
+            .atTime(LocalTime.of(8, 0).plusMinutes(random.nextInt(120)))
+            .atOffset(ZoneOffset.ofHours(1));
+    List<JiraService.History> histories = new ArrayList<>(historySize);
+    int status = 0;
+    String assignee = account(random.nextInt(5));
+    for (int i = 0; i < historySize; i++) {
+      time = nextWorkingMoment(random, time);
+      List<JiraService.HistoryItem> items = new ArrayList<>(2);
+      int kind = random.nextInt(10);
+      if (kind < 4) {
+        int next = (status + 1) % STATUSES.length;
+        items.add(
+            new JiraService.HistoryItem(
+                "status", "jira", "status", null, STATUSES[status], null, STATUSES[next]));
+        status = next;
+      } else if (kind < 6) {
+        String next = account(random.nextInt(8));
+        items.add(
+            new JiraService.HistoryItem(
+                "assignee", "jira", "assignee", assignee, assignee, next, next));
+        assignee = next;
+      } else {
+        String field = NOISE_FIELDS[random.nextInt(NOISE_FIELDS.length)];
+        items.add(new JiraService.HistoryItem(field, "jira", field, null, "old", null, "new"));
+      }
+      histories.add(new JiraService.History(JIRA_TIMESTAMP.format(time), items));
+    }
+    return new JiraService.BasicIssue(
+        key,
+        new JiraService.BasicIssueFields(
+            summary(random, clientNames),
+            List.of(random.nextInt(4) == 0 ? "HARVEST-NON-Billable" : "HARVEST-Billable"),
+            new JiraService.JiraUser(assignee, null, assignee, "true", "Europe/Brussels"),
+            JIRA_TIMESTAMP.format(time)),
+        new JiraService.Changelog(histories));
+  }
+
+  public static List<HarvestService.ProjectAssignment> assignments(long seed, int count) {
+    Random random = new Random(seed);
+    List<HarvestService.ProjectAssignment> assignments = new ArrayList<>(count);
+    int clients = Math.max(1, count / 3);
+    for (int i = 0; i < count; i++) {
+      int client = random.nextInt(clients);
+      List<HarvestService.TaskAssignment> tasks = new ArrayList<>();
+      int taskCount = 1 + random.nextInt(TASK_NAMES.length);
+      for (int t = 0; t < taskCount; t++) {
+        String name = TASK_NAMES[(i + t) % TASK_NAMES.length];
+        tasks.add(
+            new HarvestService.TaskAssignment(
+                new HarvestService.Task((long) (i * 10 + t), name), !name.contains("non-")));
+      }
+      assignments.add(
+          new HarvestService.ProjectAssignment(
+              new HarvestService.Project((long) i, "Project " + i),
+              new HarvestService.Client((long) client, clientName(client)),
+              tasks));
+    }
+    return assignments;
+  }
+
+  public static List<String> clientNames(List<HarvestService.ProjectAssignment> assignments) {
+    return assignments.stream().map(assignment -> assignment.client().name()).distinct().toList();
+  }
+
+  public static String clientName(int index) {
+    String name = NAME_PARTS[index % NAME_PARTS.length];
+    return index < NAME_PARTS.length ? name : name + " " + (index / NAME_PARTS.length);
+  }
+
+  private static String account(int index) {
+    return "account-" + index;
+  }
+
+  private static String summary(Random random, List<String> clientNames) {
+    StringBuilder summary = new StringBuilder();
+    if (!clientNames.isEmpty() && random.nextInt(5) != 0) {
+      summary.append('[').append(clientNames.get(random.nextInt(clientNames.size()))).append("] ");
+    }
+    int words = 4 + random.nextInt(8);
+    for (int i = 0; i < words; i++) {
+      summary.append(SUMMARY_WORDS[random.nextInt(SUMMARY_WORDS.length)]).append(' ');
+    }
+    return summary.toString().trim();
+  }
+
+  // mostly minutes apart, sometimes the next morning, skipping weekends
+  private static OffsetDateTime nextWorkingMoment(Random random, OffsetDateTime time) {
+    OffsetDateTime next =
+        random.nextInt(8) == 0
+            ? time.plusDays(1).with(LocalTime.of(8, random.nextInt(60)))
+            : time.plusMinutes(1 + random.nextInt(90));
+    while (next.getDayOfWeek() == DayOfWeek.SATURDAY || next.getDayOfWeek() == DayOfWeek.SUNDAY) {
+      next = next.plusDays(1);
+    }
+    return next;
+  }
+}
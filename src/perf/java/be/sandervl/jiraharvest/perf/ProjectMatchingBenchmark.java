@@ -0,0 +1,87 @@
+package be.sandervl.jiraharvest.perf;
+
+import be.sandervl.jiraharvest.services.ChangelogAnalyzer;
+import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.IssueResolver;
+import be.sandervl.jiraharvest.services.JiraIssueParser;
+import be.sandervl.jiraharvest.services.JiraService;
+import be.sandervl.jiraharvest.services.MappingRuleStore;
+import be.sandervl.jiraharvest.services.ProjectAssignmentCatalog;
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import be.sandervl.jiraharvest.services.WorkCalendar;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectMatchingBenchmark {
+
+  private static final int ISSUES = 256;
+
+  @Param({"10", "100", "500", "2000"})
+  int assignmentCount;
+
+  SyncMetrics metrics;
+  List<HarvestService.ProjectAssignment> assignments;
+  ProjectAssignmentCatalog catalog;
+  IssueResolver issueResolver;
+  List<JiraService.BasicIssue> issues;
+
+  @Setup
+  public void setUp() {
+    metrics = new SyncMetrics(new SimpleMeterRegistry());
+    assignments = PerfData.assignments(7, assignmentCount);
+    catalog = ProjectAssignmentCatalog.of(assignments);
+    issues = PerfData.issues(11, ISSUES, 0, PerfData.clientNames(assignments));
+    issueResolver =
+        new IssueResolver(
+            new JiraIssueParser(
+                new ChangelogAnalyzer(),
+                new WorkCalendar(
+                    LocalTime.of(9, 0),
+                    LocalTime.of(17, 0),
+                    EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+                    Set.of(),
+                    ZoneId.of("Europe/Brussels")),
+                metrics),
+            new MappingRuleStore(new ObjectMapper(), null, 2, 0.8),
+            metrics);
+  }
+
+  @Benchmark
+  public ProjectAssignmentCatalog buildCatalog() {
+    return ProjectAssignmentCatalog.of(assignments);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ISSUES)
+  public void matchProjectAndTask(Blackhole blackhole) {
+    for (var issue : issues) {
+      blackhole.consume(issueResolver.getTaskAndProjectFromIssue(issue, catalog));
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package be.sandervl.jiraharvest.perf;
+
+import be.sandervl.jiraharvest.JiraHarvestApplication;
+import be.sandervl.jiraharvest.commands.JiraHarvestSync;
+import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.HttpTransport;
+import be.sandervl.jiraharvest.services.JiraService;
+import be.sandervl.jiraharvest.services.ResponseCache;
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.shell.boot.TerminalCustomizer;
+
+/**
+ * Runs the real services and a non-interactive {@code start --full --auto --unattended} against a
+ * {@link FakeRemoteServer} and prints throughput, per-call latency and allocation rate.
+ *
+ * <p>Arguments are {@code key=value} pairs for the dataset ({@code issues}, {@code historySize},
+ * {@code assignments}, {@code latencyMs}, {@code jitterMs}, {@code searchPageLimit}, {@code
+ * harvestPageLimit}, {@code throttleRate}, {@code gzip}), {@code metricsFile} to dump the
+ * application metrics as JSON at the end, and {@code sync.*} settings override the application
+ * config. The client side Harvest write limit caps a sync at 100 writes per 15 seconds, pass {@code
+ * sync.harvestRequestsPerWindow=1000000} to measure without it:
+ *
+ * <pre>
+ * mvn -Pperf test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=be.sandervl.jiraharvest.perf.SyncLoadTest \
+ *     -Dexec.args="issues=20000 latencyMs=20 sync.harvestRequestsPerWindow=1000000"
+ * </pre>
+ */
+public class SyncLoadTest {
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> arguments = new HashMap<>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (eq > 0) {
+        arguments.put(arg.substring(0, eq), arg.substring(eq + 1));
+      }
+    }
+    var options =
+        new FakeRemoteServer.Options(
+            Long.parseLong(arguments.getOrDefault("seed", "42")),
+            Integer.parseInt(arguments.getOrDefault("issues", "20000")),
+            Integer.parseInt(arguments.getOrDefault("historySize", "30")),
+            Integer.parseInt(arguments.getOrDefault("assignments", "200")),
+            Duration.ofMillis(Long.parseLong(arguments.getOrDefault("latencyMs", "20"))),
+            Duration.ofMillis(Long.parseLong(arguments.getOrDefault("jitterMs", "10"))),
+            Integer.parseInt(arguments.getOrDefault("searchPageLimit", "100")),
+            Integer.parseInt(arguments.getOrDefault("harvestPageLimit", "100")),
+            Double.parseDouble(arguments.getOrDefault("throttleRate", "0.01")),
+            Boolean.parseBoolean(arguments.getOrDefault("gzip", "true")));
+
+    Path stateDir = Files.createTempDirectory("jira-harvest-load");
+    try (var fake = new FakeRemoteServer(options);
+        var context = startApplication(fake.url(), stateDir, arguments)) {
+      var latencies = context.getBean(CallLatencies.class);
+      var jiraService = context.getBean(JiraService.class);
+      var harvestService = context.getBean(HarvestService.class);
+      var responseCache = context.getBean(ResponseCache.class);
+      System.out.printf(
+          "Dataset: %d issues with %d histories, %d assignments, latency %s + %s jitter, %.1f%%"
+              + " throttled writes%n%n",
+          options.issues(),
+          options.historySize(),
+          options.assignments(),
+          options.latency(),
+          options.jitter(),
+          options.throttleRate() * 100);
+
+      long syncRequests = fake.requests();
+      report(
+          "sync (cold)",
+          fake.issueCount(),
+          latencies,
+          () -> {
+            context.getBean(JiraHarvestSync.class).start(true, true, true);
+            return fake.createdTimeEntries();
+          });
+      System.out.printf(
+          "  %d requests, %d time entries created, %d writes throttled%n%n",
+          fake.requests() - syncRequests, fake.createdTimeEntries(), fake.throttled());
+
+      responseCache.clear();
+      report(
+          "jira fetch (warm snapshot cache)",
+          fake.issueCount(),
+          latencies,
+          () -> {
+            int count = 0;
+            for (var ignored : jiraService.getIssues()) {
+              count++;
+            }
+            return count;
+          });
+
+      responseCache.clear();
+      report(
+          "harvest time entries",
+          fake.createdTimeEntries(),
+          latencies,
+          () -> {
+            try (var timeEntries = harvestService.streamTimeEntries()) {
+              return (int) timeEntries.count();
+            }
+          });
+
+      if (arguments.containsKey("metricsFile")) {
+        context
+            .getBean(ObjectMapper.class)
+            .writerWithDefaultPrettyPrinter()
+            .writeValue(
+                Path.of(arguments.get("metricsFile")).toFile(),
+                context.getBean(SyncMetrics.class).snapshot());
+      }
+    } finally {
+      try (var files = Files.walk(stateDir)) {
+        files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  private static ConfigurableApplicationContext startApplication(
+      String url, Path stateDir, Map<String, String> arguments) {
+    // system properties, so they win over application.yaml
+    System.setProperty("jira.url", url);
+    System.setProperty("jira.username", "perf");
+    System.setProperty("jira.token", "perf");
+    System.setProperty("harvest.url", url);
+    System.setProperty("harvest.token", "perf");
+    System.setProperty("harvest.account-id", "1");
+    System.setProperty("sync.stateDir", stateDir.toString());
+    System.setProperty("spring.shell.interactive.enabled", "false");
+    System.setProperty("logging.level.root", "WARN");
+    arguments.forEach(
+        (key, value) -> {
+          if (key.startsWith("sync.")) {
+            System.setProperty(key, value);
+          }
+        });
+    return new SpringApplicationBuilder(JiraHarvestApplication.class, LoadTestConfig.class)
+        .bannerMode(Banner.Mode.OFF)
+        .web(WebApplicationType.NONE)
+        .run();
+  }
+
+  private static void report(
+      String phase, int items, CallLatencies latencies, Supplier<Integer> work) {
+    latencies.reset();
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    int produced = work.get();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long allocated = allocatedBytes() - allocatedBefore;
+    System.out.printf(
+        "%s: %d items in %.2fs, %.1f items/s (%d produced), %.1f MB/s allocated%n",
+        phase, items, seconds, items / seconds, produced, allocated / seconds / 1024 / 1024);
+    latencies
+        .summaries()
+        .forEach(
+            (call, summary) ->
+                System.out.printf(
+                    "  %-45s %6d calls  p50 %7.1fms  p99 %7.1fms  max %7.1fms%n",
+                    call,
+                    summary.calls(),
+                    summary.p50Millis(),
+                    summary.p99Millis(),
+                    summary.maxMillis()));
+  }
+
+  // sum over live threads, allocations of threads that already ended are not counted
+  private static long allocatedBytes() {
+    var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long total = 0;
+    for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      if (allocated > 0) {
+        total += allocated;
+      }
+    }
+    return total;
+  }
+
+  @Configuration
+  static class LoadTestConfig {
+
+    @Bean
+    CallLatencies callLatencies() {
+      return new CallLatencies();
+    }
+
+    @Bean
+    @Primary
+    HttpTransport timedHttpTransport(
+        ExecutorService remoteCallExecutor, SyncMetrics metrics, CallLatencies callLatencies) {
+      var timeouts = new HttpTransport.Timeouts(Duration.ofSeconds(10), Duration.ofSeconds(60));
+      return new HttpTransport(remoteCallExecutor, metrics, timeouts, Map.of()) {
+        @Override
+        public ClientHttpRequestFactory requestFactory(String rootUri) {
+          return callLatencies.wrap(super.requestFactory(rootUri));
+        }
+      };
+    }
+
+    @Bean
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    TerminalCustomizer silentTerminal() {
+      return terminalBuilder ->
+          terminalBuilder
+              .system(false)
+              .dumb(true)
+              .streams(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+    }
+  }
+}
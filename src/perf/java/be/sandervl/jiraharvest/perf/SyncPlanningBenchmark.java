@@ -0,0 +1,88 @@
+package be.sandervl.jiraharvest.perf;
+
+import be.sandervl.jiraharvest.services.ChangelogAnalyzer;
+import be.sandervl.jiraharvest.services.HarvestService;
+import be.sandervl.jiraharvest.services.IssueResolver;
+import be.sandervl.jiraharvest.services.JiraIssueParser;
+import be.sandervl.jiraharvest.services.JiraService;
+import be.sandervl.jiraharvest.services.MappingRuleStore;
+import be.sandervl.jiraharvest.services.ProjectAssignmentCatalog;
+import be.sandervl.jiraharvest.services.SyncMetrics;
+import be.sandervl.jiraharvest.services.WorkCalendar;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What {@code start --auto} does between fetching and submitting: build the catalog, filter the
+ * issues on the current user and resolve each one, with a cold changelog analyzer as on a fresh
+ * run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncPlanningBenchmark {
+
+  @Param({"50", "500"})
+  int issueCount;
+
+  @Param({"50", "500"})
+  int historySize;
+
+  @Param({"100", "2000"})
+  int assignmentCount;
+
+  SyncMetrics metrics;
+  WorkCalendar workCalendar;
+  List<HarvestService.ProjectAssignment> assignments;
+  List<JiraService.BasicIssue> issues;
+  JiraService.JiraUser user;
+
+  @Setup
+  public void setUp() {
+    metrics = new SyncMetrics(new SimpleMeterRegistry());
+    workCalendar =
+        new WorkCalendar(
+            LocalTime.of(9, 0),
+            LocalTime.of(17, 0),
+            EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+            Set.of(),
+            ZoneId.of("Europe/Brussels"));
+    assignments = PerfData.assignments(7, assignmentCount);
+    issues = PerfData.issues(13, issueCount, historySize, PerfData.clientNames(assignments));
+    user = new JiraService.JiraUser(PerfData.CURRENT_USER, null, null, "true", "Europe/Brussels");
+  }
+
+  @Benchmark
+  public List<IssueResolver.Resolution> plan() {
+    var issueParser = new JiraIssueParser(new ChangelogAnalyzer(), workCalendar, metrics);
+    var issueResolver =
+        new IssueResolver(
+            issueParser, new MappingRuleStore(new ObjectMapper(), null, 2, 0.8), metrics);
+    var catalog = ProjectAssignmentCatalog.of(assignments);
+    return issues.stream()
+        .filter(issue -> issueParser.isCurrentAssigneeOrWasAssigneeInChangelog(user, issue))
+        .map(issue -> issueResolver.resolve(issue, catalog, user))
+        .toList();
+  }
+}
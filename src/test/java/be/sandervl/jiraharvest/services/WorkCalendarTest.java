@@ -0,0 +1,107 @@
+package be.sandervl.jiraharvest.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class WorkCalendarTest {
+
+  // 2023-05-01 is a Monday
+  private final WorkCalendar calendar =
+      new WorkCalendar(
+          LocalTime.of(9, 0),
+          LocalTime.of(17, 0),
+          EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+          Set.of(LocalDate.of(2023, 5, 1)),
+          ZoneOffset.UTC);
+
+  @Test
+  void countsOnlyTheWorkingHoursOfASingleDay() {
+    assertThat(calendar.workingTime(at(2023, 4, 4, 10, 0), at(2023, 4, 4, 15, 30)))
+        .isEqualTo(Duration.ofMinutes(330));
+    assertThat(calendar.workingTime(at(2023, 4, 4, 7, 0), at(2023, 4, 4, 8, 0)))
+        .isEqualTo(Duration.ZERO);
+    assertThat(calendar.workingTime(at(2023, 4, 4, 16, 0), at(2023, 4, 4, 19, 0)))
+        .isEqualTo(Duration.ofHours(1));
+  }
+
+  @Test
+  void clampsThePartialFirstAndLastDay() {
+    // Tuesday 15:00 to Thursday 11:00: 2h, a full Wednesday and 2h
+    assertThat(calendar.workingTime(at(2023, 4, 4, 15, 0), at(2023, 4, 6, 11, 0)))
+        .isEqualTo(Duration.ofHours(12));
+    // outside the working hours on both ends
+    assertThat(calendar.workingTime(at(2023, 4, 4, 18, 0), at(2023, 4, 6, 7, 0)))
+        .isEqualTo(Duration.ofHours(8));
+  }
+
+  @Test
+  void skipsWeekends() {
+    // Friday 16:00 to Monday 10:00
+    assertThat(calendar.workingTime(at(2023, 4, 7, 16, 0), at(2023, 4, 10, 10, 0)))
+        .isEqualTo(Duration.ofHours(2));
+    // starting on a Saturday
+    assertThat(calendar.workingTime(at(2023, 4, 8, 12, 0), at(2023, 4, 11, 12, 0)))
+        .isEqualTo(Duration.ofHours(11));
+  }
+
+  @Test
+  void skipsHolidays() {
+    // Friday 16:00 to Tuesday 10:00 over the Monday holiday
+    assertThat(calendar.workingTime(at(2023, 4, 28, 16, 0), at(2023, 5, 2, 10, 0)))
+        .isEqualTo(Duration.ofHours(2));
+    // ending on the holiday
+    assertThat(calendar.workingTime(at(2023, 4, 28, 16, 0), at(2023, 5, 1, 12, 0)))
+        .isEqualTo(Duration.ofHours(1));
+  }
+
+  @Test
+  void countsWholeWeeksAtOnce() {
+    // five weeks of working days minus the holiday
+    assertThat(calendar.workingTime(at(2023, 4, 3, 9, 0), at(2023, 5, 8, 9, 0)))
+        .isEqualTo(Duration.ofHours(24 * 8));
+    assertThat(calendar.workingDaysBetween(LocalDate.of(2023, 4, 3), LocalDate.of(2023, 5, 8)))
+        .isEqualTo(24);
+  }
+
+  @Test
+  void isZeroWhenTheEndIsNotAfterTheStart() {
+    assertThat(calendar.workingTime(at(2023, 4, 6, 11, 0), at(2023, 4, 4, 15, 0)))
+        .isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  void acceptsNoWorkingDays() {
+    var idle =
+        new WorkCalendar(
+            LocalTime.of(9, 0), LocalTime.of(17, 0), Set.of(), Set.of(), ZoneOffset.UTC);
+
+    assertThat(idle.workingTime(at(2023, 4, 3, 9, 0), at(2023, 4, 14, 17, 0)))
+        .isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  void knowsTheWorkingHoursInAZone() {
+    var brussels = ZoneId.of("Europe/Brussels");
+
+    assertThat(calendar.isWorkingTime(at(2023, 4, 4, 8, 0).toInstant(ZoneOffset.UTC), brussels))
+        .isTrue();
+    assertThat(calendar.isWorkingTime(at(2023, 4, 4, 15, 30).toInstant(ZoneOffset.UTC), brussels))
+        .isFalse();
+    assertThat(calendar.isWorkingTime(at(2023, 5, 1, 10, 0).toInstant(ZoneOffset.UTC), brussels))
+        .isFalse();
+  }
+
+  private static LocalDateTime at(int year, int month, int day, int hour, int minute) {
+    return LocalDateTime.of(year, month, day, hour, minute);
+  }
+}
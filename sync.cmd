@@ -0,0 +1,2 @@
+cd /d "%~dp0"
+call mvnw.cmd package -Dmaven.test.skip=true -q && java -Dspring.profiles.active=local -jar target\jira-harvest.jar start --auto --unattended
\ No newline at end of file